@@ -0,0 +1,80 @@
+package antifraud.auth;
+
+import antifraud.ip.IpAddress;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+// turns away sign-ins for a username or from an address that recently failed too often, before any password is hashed.
+// only wrong passwords count: a locked account is refused without a BCrypt check anyway
+@Component
+public class AuthenticationThrottle {
+
+    public static final String THROTTLED_MESSAGE = "Too many failed sign-in attempts, please retry later";
+
+    private final FailureSketch usernames;
+    private final FailureSketch addresses;
+    private final Counter failures;
+    private final Counter throttledUsernames;
+    private final Counter throttledAddresses;
+
+    @Autowired
+    public AuthenticationThrottle(MeterRegistry meterRegistry,
+                                  @Value("${antifraud.auth.throttle-width}") int width,
+                                  @Value("${antifraud.auth.throttle-free-failures-per-user}") int freeFailuresPerUser,
+                                  @Value("${antifraud.auth.throttle-free-failures-per-ip}") int freeFailuresPerIp,
+                                  @Value("${antifraud.auth.throttle-base-delay-ms}") long baseDelayMillis,
+                                  @Value("${antifraud.auth.throttle-max-delay-ms}") long maxDelayMillis) {
+        this.usernames = new FailureSketch(width, freeFailuresPerUser, baseDelayMillis, maxDelayMillis);
+        this.addresses = new FailureSketch(width, freeFailuresPerIp, baseDelayMillis, maxDelayMillis);
+        this.failures = meterRegistry.counter("antifraud.auth.failures");
+        this.throttledUsernames = meterRegistry.counter("antifraud.auth.throttled", "by", "username");
+        this.throttledAddresses = meterRegistry.counter("antifraud.auth.throttled", "by", "ip");
+    }
+
+    // 0 when the attempt may go ahead
+    public long retryAfterMillis(String username, String address) {
+        final long now = System.currentTimeMillis();
+        final long userBlockedUntil = usernames.blockedUntil(keyOf(username), now);
+        if (userBlockedUntil > 0) {
+            throttledUsernames.increment();
+            return userBlockedUntil - now;
+        }
+
+        final long addressBlockedUntil = addresses.blockedUntil(keyOfAddress(address), now);
+        if (addressBlockedUntil > 0) {
+            throttledAddresses.increment();
+            return addressBlockedUntil - now;
+        }
+        return 0;
+    }
+
+    public void failed(String username, String address) {
+        final long now = System.currentTimeMillis();
+        failures.increment();
+        usernames.recordFailure(keyOf(username), now);
+        addresses.recordFailure(keyOfAddress(address), now);
+    }
+
+    // the address keeps its count, or one valid account would let its owner guess at all the others
+    public void succeeded(String username) {
+        usernames.reset(keyOf(username));
+    }
+
+    private static String keyOf(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    // an IPv6 client usually has a whole /64 to pick addresses from, so that is what gets counted
+    private static String keyOfAddress(String address) {
+        if (address == null || !IpAddress.isValid(address)) {
+            return String.valueOf(address);
+        }
+        final IpAddress ip = IpAddress.parse(address);
+        return ip.isIpv4() ? ip.toString() : new IpAddress(ip.getHigh(), 0).toString();
+    }
+}
@@ -0,0 +1,75 @@
+package antifraud.auth;
+
+import antifraud.domain.TokenClaims;
+import antifraud.rest.TokenResponse;
+import antifraud.service.TokenService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+// authenticates "Authorization: Bearer <token>" without a password check or a database lookup
+public class BearerTokenAuthenticationFilter extends OncePerRequestFilter {
+
+    public static final String PREFIX = TokenResponse.BEARER + ' ';
+    public static final String INVALID_TOKEN = "Invalid or expired token";
+
+    // a token is only ever handed out for the password, a token cannot renew itself
+    private static final RequestMatcher TOKEN_ENDPOINT = new AntPathRequestMatcher("/api/auth/token");
+
+    private final TokenService tokenService;
+    private final AuthenticationEntryPoint authenticationEntryPoint;
+
+    public BearerTokenAuthenticationFilter(TokenService tokenService, AuthenticationEntryPoint authenticationEntryPoint) {
+        this.tokenService = tokenService;
+        this.authenticationEntryPoint = authenticationEntryPoint;
+    }
+
+    public static boolean isBearer(String authorization) {
+        return authorization != null && authorization.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    public static Authentication authenticationOf(TokenClaims claims) {
+        return new UsernamePasswordAuthenticationToken(claims.getUsername(), null,
+                List.of(new SimpleGrantedAuthority(claims.getRole().name())));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        final String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (!isBearer(authorization)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Optional<TokenClaims> claims = tokenService.verify(authorization.substring(PREFIX.length()).trim());
+        if (claims.isEmpty()) {
+            SecurityContextHolder.clearContext();
+            authenticationEntryPoint.commence(request, response, new BadCredentialsException(INVALID_TOKEN));
+            return;
+        }
+
+        SecurityContextHolder.getContext().setAuthentication(authenticationOf(claims.get()));
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return TOKEN_ENDPOINT.matches(request);
+    }
+}
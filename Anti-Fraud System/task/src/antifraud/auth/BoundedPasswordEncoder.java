@@ -0,0 +1,84 @@
+package antifraud.auth;
+
+import antifraud.exception.PasswordHashingRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// runs every hash and every password check on a pool of its own, so a burst of sign-ups or failed logins takes no more
+// than its threads' worth of CPU away from scoring. once the queue is full further work is turned down at once
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    static final String POOL_NAME = "password-hashing";
+
+    private final PasswordEncoder delegate;
+    private final ExecutorService executor;
+    private final Counter rejected;
+    private final Timer waiting;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, POOL_NAME + "-" + count.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.delegate = delegate;
+        // active threads, queued and remaining queue capacity, completed tasks
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, pool, POOL_NAME, Tags.empty());
+        this.rejected = meterRegistry.counter("antifraud.password-hashing.rejected");
+        this.waiting = meterRegistry.timer("antifraud.password-hashing.queue-wait");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Supplier<T> work) {
+        final long submitted = System.nanoTime();
+        final Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                waiting.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return work.get();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException("Too many password checks in progress, please retry");
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingRejectedException("Interrupted while waiting for the password check");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package antifraud.auth;
+
+import antifraud.exception.PasswordHashingRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.authentication.www.BasicAuthenticationConverter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// HTTP Basic that answers repeated credentials from the CredentialCache; anything not cached goes through the
+// regular check and is remembered once it passes, unless the AuthenticationThrottle turns it away first
+public class CachingBasicAuthenticationFilter extends BasicAuthenticationFilter {
+
+    private static final String GENERATION_ATTRIBUTE = CachingBasicAuthenticationFilter.class.getName() + ".generation";
+    private static final String USERNAME_ATTRIBUTE = CachingBasicAuthenticationFilter.class.getName() + ".username";
+    private static final String PREFIX = "Basic ";
+
+    private final CredentialCache credentialCache;
+    private final AuthenticationThrottle throttle;
+    private final BasicAuthenticationConverter converter = new BasicAuthenticationConverter();
+
+    public CachingBasicAuthenticationFilter(AuthenticationManager authenticationManager,
+                                            AuthenticationEntryPoint authenticationEntryPoint,
+                                            CredentialCache credentialCache,
+                                            AuthenticationThrottle throttle) {
+        super(authenticationManager, authenticationEntryPoint);
+        this.credentialCache = credentialCache;
+        this.throttle = throttle;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        final String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        // bearer tokens and other schemes are none of this filter's business, and hashing them would only count misses
+        if (!isBasic(authorization)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final Authentication cached = credentialCache.get(authorization);
+        if (cached != null) {
+            SecurityContextHolder.getContext().setAuthentication(cached);
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final String username = usernameOf(request);
+        if (username != null) {
+            final long retryAfterMillis = throttle.retryAfterMillis(username, request.getRemoteAddr());
+            if (retryAfterMillis > 0) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000));
+                response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), AuthenticationThrottle.THROTTLED_MESSAGE);
+                return;
+            }
+            request.setAttribute(USERNAME_ATTRIBUTE, username);
+        }
+
+        request.setAttribute(GENERATION_ATTRIBUTE, credentialCache.generation());
+        try {
+            super.doFilterInternal(request, response, chain);
+        } catch (PasswordHashingRejectedException e) {
+            // an overload rather than bad credentials, so the client is told to come back instead of to sign in again
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+
+    @Override
+    protected void onSuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response,
+                                              Authentication authResult) {
+        credentialCache.put(request.getHeader(HttpHeaders.AUTHORIZATION), authResult,
+                (long) request.getAttribute(GENERATION_ATTRIBUTE));
+        throttle.succeeded(authResult.getName());
+    }
+
+    @Override
+    protected void onUnsuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response,
+                                                AuthenticationException failed) {
+        final Object username = request.getAttribute(USERNAME_ATTRIBUTE);
+        if (username != null && failed instanceof BadCredentialsException) {
+            throttle.failed((String) username, request.getRemoteAddr());
+        }
+    }
+
+    public static boolean isBasic(String authorization) {
+        return authorization != null && authorization.regionMatches(true, 0, PREFIX, 0, PREFIX.length());
+    }
+
+    // null when there are no Basic credentials; a malformed header is left to the regular check to reject
+    private String usernameOf(HttpServletRequest request) {
+        try {
+            final UsernamePasswordAuthenticationToken token = converter.convert(request);
+            return token == null ? null : token.getName();
+        } catch (AuthenticationException e) {
+            return null;
+        }
+    }
+}
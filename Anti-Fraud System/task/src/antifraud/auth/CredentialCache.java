@@ -0,0 +1,144 @@
+package antifraud.auth;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// remembers for a short while which Authorization headers already passed the password check, so a client sending the
+// same credentials on every call pays for BCrypt and the user lookup once per ttl.
+// entries are keyed by an HMAC of the header under a key that never leaves the process, so the cache holds no password.
+// changes made here invalidate right away; those made through another node are caught by the token version poll
+@Component
+public class CredentialCache {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKey key;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final ConcurrentMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+    // bumped by every invalidation; an authentication that started before one is not cached, it may have read the old user
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public CredentialCache(MeterRegistry meterRegistry,
+                           @Value("${antifraud.auth.cache-ttl-ms}") long ttlMillis,
+                           @Value("${antifraud.auth.cache-max-entries}") int maxEntries) throws GeneralSecurityException {
+        this.key = KeyGenerator.getInstance(ALGORITHM).generateKey();
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.hits = meterRegistry.counter("antifraud.auth.cache", "result", "hit");
+        this.misses = meterRegistry.counter("antifraud.auth.cache", "result", "miss");
+        meterRegistry.gaugeMapSize("antifraud.auth.cache.size", Tags.empty(), entries);
+    }
+
+    // null unless the header was verified within the ttl and its user has not changed since
+    public Authentication get(String authorization) {
+        final ByteBuffer digest = digestOf(authorization);
+        final Entry entry = entries.get(digest);
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            if (entry != null) {
+                entries.remove(digest, entry);
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.authentication;
+    }
+
+    // read before authenticating and handed to put afterwards
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(String authorization, Authentication authentication, long observedGeneration) {
+        if (maxEntries <= 0 || generation.get() != observedGeneration) {
+            return;
+        }
+
+        final ByteBuffer digest = digestOf(authorization);
+        final Entry entry = new Entry(authentication, System.currentTimeMillis() + ttlMillis);
+        makeRoom();
+        entries.put(digest, entry);
+        // an invalidation that slipped in between the check and the put may have missed the entry
+        if (generation.get() != observedGeneration) {
+            entries.remove(digest, entry);
+        }
+    }
+
+    // drops every cached login of the user, so a lock, a role change or a deletion applies to the very next request
+    public void invalidate(String username) {
+        generation.incrementAndGet();
+        entries.values().removeIf(entry -> entry.authentication.getName().equalsIgnoreCase(username));
+    }
+
+    // drops every cached login whose user has since changed or been deleted, on whichever node; versions are keyed by
+    // lower-case username. a login that read the user just before a change carries the old version and goes with the next poll
+    public void retainCurrent(Map<String, Long> tokenVersions) {
+        entries.values().removeIf(entry -> !Objects.equals(entry.tokenVersion,
+                tokenVersions.get(entry.authentication.getName().toLowerCase(Locale.ROOT))));
+    }
+
+    private void makeRoom() {
+        if (entries.size() < maxEntries) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+        for (Iterator<ByteBuffer> keys = entries.keySet().iterator(); entries.size() >= maxEntries && keys.hasNext(); ) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private ByteBuffer digestOf(String authorization) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return ByteBuffer.wrap(mac.doFinal(authorization.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Authentication authentication;
+        // null when the principal does not say, which the next poll treats as changed
+        private final Long tokenVersion;
+        private final long expiresAt;
+
+        private Entry(Authentication authentication, long expiresAt) {
+            this.authentication = authentication;
+            this.tokenVersion = authentication.getPrincipal() instanceof UserDetailsImpl
+                    ? ((UserDetailsImpl) authentication.getPrincipal()).getTokenVersion() : null;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package antifraud.auth;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// count-min sketch of recent authentication failures in a fixed amount of memory, however many keys show up.
+// a key owns one cell in each row, the rows hashed with a secret seed so nobody can aim collisions at a victim; its
+// estimate is the smallest of its cells, so a collision can only overstate failures, never hide them.
+// a cell packs the failure count with the time of the last failure and is only ever changed by compare-and-set
+class FailureSketch {
+
+    private static final int DEPTH = 4;
+    private static final int COUNT_BITS = 8;
+    private static final int TIME_BITS = Long.SIZE - COUNT_BITS;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+    private static final int MAX_SHIFT = 30;
+
+    private final AtomicLongArray cells;
+    private final int indexMask;
+    private final long seed = new SecureRandom().nextLong();
+    private final int freeFailures;
+    private final long baseDelayMillis;
+    // also how long a key has to stay clean before its failures are forgotten
+    private final long maxDelayMillis;
+
+    FailureSketch(int width, int freeFailures, long baseDelayMillis, long maxDelayMillis) {
+        final int rowSize = Integer.highestOneBit(Math.max(width, 1));
+        this.cells = new AtomicLongArray(DEPTH * rowSize);
+        this.indexMask = rowSize - 1;
+        this.freeFailures = freeFailures;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    void recordFailure(String key, long now) {
+        final long hash = hash(key);
+        for (int row = 0; row < DEPTH; row++) {
+            final int index = indexOf(hash, row);
+            long cell;
+            long updated;
+            do {
+                cell = cells.get(index);
+                final long failures = Math.min(failuresOf(cell, now) + 1, MAX_COUNT);
+                updated = failures << TIME_BITS | Math.max(timeOf(cell), now) & TIME_MASK;
+            } while (!cells.compareAndSet(index, cell, updated));
+        }
+    }
+
+    // 0 when the key may try again now; each failure past the free ones doubles the wait, up to the maximum
+    long blockedUntil(String key, long now) {
+        final long hash = hash(key);
+        long until = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH && until > now; row++) {
+            final long cell = cells.get(indexOf(hash, row));
+            final long failures = failuresOf(cell, now);
+            until = failures <= freeFailures ? 0 : Math.min(until, timeOf(cell)
+                    + Math.min(baseDelayMillis << Math.min(failures - freeFailures - 1, MAX_SHIFT), maxDelayMillis));
+        }
+        return until > now ? until : 0;
+    }
+
+    // clears the cells a colliding key shares as well, which only ever lets that key off more lightly
+    void reset(String key) {
+        final long hash = hash(key);
+        for (int row = 0; row < DEPTH; row++) {
+            cells.set(indexOf(hash, row), 0);
+        }
+    }
+
+    private long failuresOf(long cell, long now) {
+        return now - timeOf(cell) >= maxDelayMillis ? 0 : cell >>> TIME_BITS;
+    }
+
+    private static long timeOf(long cell) {
+        return cell & TIME_MASK;
+    }
+
+    private int indexOf(long hash, int row) {
+        // every row mixes the hash again; with double hashing two keys that met in two rows would meet in all of them
+        long mixed = hash + row * 0x9e3779b97f4a7c15L;
+        mixed = (mixed ^ (mixed >>> 33)) * 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        return row * (indexMask + 1) + ((int) mixed & indexMask);
+    }
+
+    // seeded FNV-1a finished with the murmur3 mixer
+    private long hash(String key) {
+        long hash = seed;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
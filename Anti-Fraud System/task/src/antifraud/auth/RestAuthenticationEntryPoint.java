@@ -1,5 +1,6 @@
 package antifraud.auth;
 
+import antifraud.exception.PasswordHashingRejectedException;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.stereotype.Component;
@@ -14,6 +15,11 @@ public class RestAuthenticationEntryPoint implements AuthenticationEntryPoint {
 
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException authException) throws IOException, ServletException {
+        // the provider wraps what goes wrong while it looks the user up; a full hashing pool is no reason to sign in again
+        if (authException.getCause() instanceof PasswordHashingRejectedException) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, authException.getCause().getMessage());
+            return;
+        }
         response.sendError(HttpServletResponse.SC_UNAUTHORIZED, authException.getMessage());
     }
 }
@@ -1,7 +1,11 @@
 package antifraud.auth;
 
 import antifraud.handler.AntiFraudAccessDeniedHandler;
+import antifraud.service.TokenService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -10,26 +14,51 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 import static antifraud.domain.UserRole.*;
 
+@Slf4j
 @Configuration
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
-    private static final int ENCODER_STRENGTH = 13;
     private final UserDetailsService userDetailsService;
     private final RestAuthenticationEntryPoint restAuthenticationEntryPoint;
     private final AntiFraudAccessDeniedHandler accessDeniedHandler;
+    private final CredentialCache credentialCache;
+    private final AuthenticationThrottle authenticationThrottle;
+    private final TokenService tokenService;
+    private final MeterRegistry meterRegistry;
+    private final int hashingThreads;
+    private final int hashingQueueCapacity;
+    private final int hashingStrength;
+    private final long hashingTargetMillis;
+    private final int hashingMinStrength;
 
 
     @Autowired
     public SecurityConfig(UserDetailsService userDetailsService,
-                          RestAuthenticationEntryPoint restAuthenticationEntryPoint, AntiFraudAccessDeniedHandler accessDeniedHandler) {
+                          RestAuthenticationEntryPoint restAuthenticationEntryPoint, AntiFraudAccessDeniedHandler accessDeniedHandler,
+                          CredentialCache credentialCache, AuthenticationThrottle authenticationThrottle,
+                          TokenService tokenService, MeterRegistry meterRegistry,
+                          @Value("${antifraud.password-hashing.threads}") int hashingThreads,
+                          @Value("${antifraud.password-hashing.queue-capacity}") int hashingQueueCapacity,
+                          @Value("${antifraud.password-hashing.strength}") int hashingStrength,
+                          @Value("${antifraud.password-hashing.target-ms}") long hashingTargetMillis,
+                          @Value("${antifraud.password-hashing.min-strength}") int hashingMinStrength) {
         this.userDetailsService = userDetailsService;
         this.restAuthenticationEntryPoint = restAuthenticationEntryPoint;
         this.accessDeniedHandler = accessDeniedHandler;
+        this.credentialCache = credentialCache;
+        this.authenticationThrottle = authenticationThrottle;
+        this.tokenService = tokenService;
+        this.meterRegistry = meterRegistry;
+        this.hashingThreads = hashingThreads;
+        this.hashingQueueCapacity = hashingQueueCapacity;
+        this.hashingStrength = hashingStrength;
+        this.hashingTargetMillis = hashingTargetMillis;
+        this.hashingMinStrength = hashingMinStrength;
     }
 
     @Override
@@ -46,17 +75,23 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .httpBasic()
                 .authenticationEntryPoint(restAuthenticationEntryPoint) // Handles auth error
                 .and()
+                // authenticates first, the stock Basic filter then finds the request already authenticated
+                .addFilterBefore(new CachingBasicAuthenticationFilter(authenticationManager(), restAuthenticationEntryPoint,
+                                credentialCache, authenticationThrottle),
+                        BasicAuthenticationFilter.class)
+                .addFilterBefore(new BearerTokenAuthenticationFilter(tokenService, restAuthenticationEntryPoint), BasicAuthenticationFilter.class)
                 .csrf().disable().headers().frameOptions().disable() // for Postman, the H2 console
                 .and()
                 .authorizeRequests() // manage access
                 .mvcMatchers(HttpMethod.GET, "/api/auth/list").hasAnyRole(ROLE_ADMINISTRATOR.getDescription(), ROLE_SUPPORT.getDescription())
-                .mvcMatchers(HttpMethod.POST, "/api/antifraud/transaction").hasRole(ROLE_MERCHANT.getDescription())
+                .mvcMatchers(HttpMethod.POST, "/api/antifraud/transaction", "/api/antifraud/transactions/batch", "/api/antifraud/transactions/stream").hasRole(ROLE_MERCHANT.getDescription())
                 .mvcMatchers("/api/antifraud/suspicious-ip", "/api/antifraud/suspicious-ip/**", "/api/antifraud/stolencard", "/api/antifraud/stolencard/**").hasRole(ROLE_SUPPORT.getDescription())
                 .mvcMatchers(HttpMethod.PUT, "/api/auth/access", "/api/auth/role").hasRole(ROLE_ADMINISTRATOR.getDescription())
                 .mvcMatchers(HttpMethod.DELETE, "/api/auth/**").hasRole(ROLE_ADMINISTRATOR.getDescription())
-                .mvcMatchers(HttpMethod.GET, "/api/antifraud/history", "/api/antifraud/history/*").hasRole(ROLE_SUPPORT.getDescription())
+                .mvcMatchers(HttpMethod.GET, "/api/antifraud/history", "/api/antifraud/history/*", "/api/antifraud/blacklist/changes").hasRole(ROLE_SUPPORT.getDescription())
                 .mvcMatchers(HttpMethod.PUT, "/api/antifraud/transaction").hasRole(ROLE_SUPPORT.getDescription())
                 .antMatchers(HttpMethod.POST, "/api/auth/user").permitAll()
+                .mvcMatchers(HttpMethod.POST, "/api/auth/token").authenticated()
                 .antMatchers("/actuator/shutdown").permitAll() // needs to run test
                 // other matchers
                 .and()
@@ -64,8 +99,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS); // no session
     }
 
-    @Bean
+    @Bean(destroyMethod = "shutdown")
     public PasswordEncoder getEncoder() {
-        return new BCryptPasswordEncoder(ENCODER_STRENGTH);
+        final int strength = hashingTargetMillis > 0
+                ? WorkFactorPasswordEncoder.calibrate(hashingTargetMillis, hashingMinStrength)
+                : hashingStrength;
+        log.info("Hashing passwords with BCrypt cost {}", strength);
+        return new BoundedPasswordEncoder(new WorkFactorPasswordEncoder(strength), hashingThreads, hashingQueueCapacity, meterRegistry);
     }
 }
@@ -13,12 +13,14 @@ public class UserDetailsImpl implements UserDetails {
     private final String username;
     private final String password;
     private final boolean accountNonLocked;
+    private final long tokenVersion;
     private final List<GrantedAuthority> rolesAndAuthorities;
 
     public UserDetailsImpl(User user) {
         this.username = user.getUsername();
         this.password = user.getPassword();
         this.accountNonLocked = user.isAccountNonLocked();
+        this.tokenVersion = user.getTokenVersion();
         this.rolesAndAuthorities = List.of(new SimpleGrantedAuthority(user.getRole().name()));
     }
 
@@ -47,6 +49,10 @@ public class UserDetailsImpl implements UserDetails {
         return accountNonLocked;
     }
 
+    public long getTokenVersion() {
+        return tokenVersion;
+    }
+
     @Override
     public boolean isCredentialsNonExpired() {
         return true;
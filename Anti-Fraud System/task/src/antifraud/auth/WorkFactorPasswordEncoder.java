@@ -0,0 +1,57 @@
+package antifraud.auth;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// BCrypt at a cost that comes from configuration or from timing this machine at startup. a stored hash at any other
+// cost, higher or lower, asks for an upgrade, so a changed cost reaches every account at its next successful login
+public class WorkFactorPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final Pattern COST = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+    private static final int MAX_STRENGTH = 31;
+    private static final int PROBE_STRENGTH = 8;
+    private static final int PROBE_RUNS = 5;
+    private static final String PROBE_PASSWORD = "calibration";
+
+    private final int strength;
+
+    public WorkFactorPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        final Matcher matcher = COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    // the highest cost whose check still fits in targetMillis here, but never below minStrength. every step up doubles
+    // the work, so a cheap cost is timed and scaled; the fastest run counts, the first ones pay for warming up
+    public static int calibrate(long targetMillis, int minStrength) {
+        final BCryptPasswordEncoder probe = new BCryptPasswordEncoder(PROBE_STRENGTH);
+        final String hash = probe.encode(PROBE_PASSWORD);
+        long fastestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_RUNS; i++) {
+            final long started = System.nanoTime();
+            probe.matches(PROBE_PASSWORD, hash);
+            fastestNanos = Math.min(fastestNanos, System.nanoTime() - started);
+        }
+
+        final double targetNanos = targetMillis * 1_000_000d;
+        int strength = PROBE_STRENGTH;
+        while (strength < MAX_STRENGTH && fastestNanos * Math.pow(2, strength + 1 - PROBE_STRENGTH) <= targetNanos) {
+            strength++;
+        }
+        return Math.max(strength, minStrength);
+    }
+}
@@ -0,0 +1,77 @@
+package antifraud.config;
+
+import antifraud.model.Card;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+
+// the feedback retry and the locked card lookup rely on one card row per number. hibernate's schema update cannot add
+// the unique constraint to a table that already holds duplicates, which the old insert on first read could leave behind,
+// and only logs that it failed; so the duplicates are removed and the constraint is added here before hibernate starts.
+// a constraint that still cannot be added stops the start
+@Slf4j
+@Component
+public class CardNumberConstraintMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CardNumberConstraintMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!tableExists() || hasUniqueNumber()) {
+            return;
+        }
+
+        // duplicates were inserted together on a card's first transaction and could never be updated afterwards, as
+        // every feedback failed on them, so the oldest row holds the same limits as the others
+        final int removed = jdbcTemplate.update("DELETE FROM card c WHERE EXISTS "
+                + "(SELECT 1 FROM card o WHERE o.number = c.number AND o.card_id < c.card_id)");
+        if (removed > 0) {
+            log.warn("Removed {} duplicate card rows", removed);
+        }
+        jdbcTemplate.execute("ALTER TABLE card ADD CONSTRAINT " + Card.NUMBER_CONSTRAINT + " UNIQUE (number)");
+    }
+
+    private boolean tableExists() {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet tables = metaData.getTables(null, null, metaData.storesUpperCaseIdentifiers() ? "CARD" : "card", null)) {
+                return tables.next();
+            }
+        });
+    }
+
+    private boolean hasUniqueNumber() {
+        return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet indexes = metaData.getIndexInfo(null, null, metaData.storesUpperCaseIdentifiers() ? "CARD" : "card", true, false)) {
+                while (indexes.next()) {
+                    if ("number".equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    // hibernate's schema update and every repository wait for the migration
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(CardNumberConstraintMigration.class);
+        }
+    }
+}
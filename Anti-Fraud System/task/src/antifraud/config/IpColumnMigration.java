@@ -0,0 +1,145 @@
+package antifraud.config;
+
+import antifraud.ip.IpAddress;
+import antifraud.ip.IpRange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+// ddl-auto=update never changes a column type, so a database from before the binary ip columns still holds the text
+// forms. this moves them over before hibernate or anything else touches the tables: a binary column is added, filled
+// in id order and swapped in. each step can run again, so a migration cut short carries on at the next start
+@Component
+public class IpColumnMigration {
+
+    private static final String BINARY_COLUMN = "ip_binary";
+
+    private static final List<IpColumn> COLUMNS = List.of(
+            new IpColumn("transactions", "id", IpAddress.BYTES, text -> IpAddress.parse(text).toBytes()),
+            new IpColumn("addresses", "address_id", IpRange.BYTES, text -> IpRange.parse(text).toBytes()));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public IpColumnMigration(JdbcTemplate jdbcTemplate, @Value("${antifraud.bulk.batch-size}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        for (IpColumn column : COLUMNS) {
+            final Integer type = typeOf(column.table, "ip");
+            if (type != null && type != Types.BINARY && type != Types.VARBINARY) {
+                migrate(column);
+            }
+        }
+    }
+
+    private void migrate(IpColumn column) {
+        jdbcTemplate.execute("ALTER TABLE " + column.table + " ADD COLUMN IF NOT EXISTS " + BINARY_COLUMN + " BINARY(" + column.bytes + ")");
+
+        final String select = "SELECT " + column.id + ", ip FROM " + column.table + " WHERE " + BINARY_COLUMN + " IS NULL AND ip IS NOT NULL AND "
+                + column.id + " > ? ORDER BY " + column.id + " LIMIT " + batchSize;
+        final String update = "UPDATE " + column.table + " SET " + BINARY_COLUMN + " = ? WHERE " + column.id + " = ?";
+        long lastId = Long.MIN_VALUE;
+        List<Map<String, Object>> rows;
+        while (!(rows = jdbcTemplate.queryForList(select, lastId)).isEmpty()) {
+            List<Object[]> values = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                final long id = ((Number) row.get(column.id)).longValue();
+                values.add(new Object[]{column.toBytes(row.get("ip").toString(), id), id});
+                lastId = id;
+            }
+            jdbcTemplate.batchUpdate(update, values);
+        }
+
+        // a unique constraint goes with its column and is added back here; hibernate's schema update builds the
+        // plain indexes again, but leaves unique constraints on existing tables alone
+        final boolean unique = !indexesOver(column.table, "ip", true).isEmpty();
+        for (String index : indexesOver(column.table, "ip", false)) {
+            jdbcTemplate.execute("DROP INDEX IF EXISTS " + index);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + column.table + " DROP COLUMN ip");
+        jdbcTemplate.execute("ALTER TABLE " + column.table + " ALTER COLUMN " + BINARY_COLUMN + " RENAME TO ip");
+        if (unique) {
+            jdbcTemplate.execute("ALTER TABLE " + column.table + " ADD UNIQUE (ip)");
+        }
+    }
+
+    // null when there is no such table or column
+    private Integer typeOf(String table, String column) {
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            final boolean upperCase = metaData.storesUpperCaseIdentifiers();
+            try (ResultSet columns = metaData.getColumns(null, null,
+                    upperCase ? table.toUpperCase() : table, upperCase ? column.toUpperCase() : column)) {
+                return columns.next() ? columns.getInt("DATA_TYPE") : null;
+            }
+        });
+    }
+
+    private Set<String> indexesOver(String table, String column, boolean unique) {
+        return jdbcTemplate.execute((ConnectionCallback<Set<String>>) connection -> {
+            final DatabaseMetaData metaData = connection.getMetaData();
+            final boolean upperCase = metaData.storesUpperCaseIdentifiers();
+            Set<String> indexes = new HashSet<>();
+            try (ResultSet columns = metaData.getIndexInfo(null, null, upperCase ? table.toUpperCase() : table, false, false)) {
+                while (columns.next()) {
+                    if (columns.getBoolean("NON_UNIQUE") != unique && column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                        indexes.add(columns.getString("INDEX_NAME"));
+                    }
+                }
+            }
+            return indexes;
+        });
+    }
+
+    private static final class IpColumn {
+
+        private final String table;
+        private final String id;
+        private final int bytes;
+        private final Function<String, byte[]> converter;
+
+        private IpColumn(String table, String id, int bytes, Function<String, byte[]> converter) {
+            this.table = table;
+            this.id = id;
+            this.bytes = bytes;
+            this.converter = converter;
+        }
+
+        // a value that no longer parses stops the start, the rows would be unreadable otherwise
+        byte[] toBytes(String text, long id) {
+            try {
+                return converter.apply(text);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Cannot migrate " + table + " row " + id + ": '" + text + "' is not a valid ip", e);
+            }
+        }
+    }
+
+    // hibernate's schema update and every repository wait for the migration
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(IpColumnMigration.class);
+        }
+    }
+}
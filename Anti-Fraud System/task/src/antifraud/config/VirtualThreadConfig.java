@@ -0,0 +1,39 @@
+package antifraud.config;
+
+import antifraud.util.VirtualThreads;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// every request, including the @Transactional service calls and the password check it makes, runs on its own virtual thread
+@Configuration
+@ConditionalOnProperty(name = "antifraud.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newPerTaskExecutor("http-virtual-"));
+    }
+
+    // without tomcat's 200 threads as a limit, the connection pool is what bounds the requests in the database, and the
+    // rest wait in getConnection. the pool gets its own size in this mode, and a burst of clients waits as long as
+    // connection-timeout-ms allows instead of failing after hikari's default 30 seconds
+    @Bean
+    public static BeanPostProcessor virtualThreadConnectionPool(@Value("${antifraud.virtual-threads.pool-size}") int poolSize,
+                                                                @Value("${antifraud.virtual-threads.connection-timeout-ms}") long connectionTimeoutMillis) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource) {
+                    ((HikariDataSource) bean).setMaximumPoolSize(poolSize);
+                    ((HikariDataSource) bean).setConnectionTimeout(connectionTimeoutMillis);
+                }
+                return bean;
+            }
+        };
+    }
+}
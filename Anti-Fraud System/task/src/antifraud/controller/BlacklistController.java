@@ -0,0 +1,57 @@
+package antifraud.controller;
+
+import antifraud.domain.AntiFraudCustomErrorMessage;
+import antifraud.model.BlacklistChange;
+import antifraud.service.BlacklistChangeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import java.util.List;
+
+@RestController
+@RequestMapping(path = "/api/antifraud/blacklist", produces = MediaType.APPLICATION_JSON_VALUE)
+@Validated
+@Tag(name = "Blacklist service", description = "Follow changes of the stolen card and suspicious ip lists")
+public class BlacklistController {
+
+    private static final int MAX_CHANGES = 1000;
+
+    private final BlacklistChangeService blacklistChangeService;
+
+    @Autowired
+    public BlacklistController(BlacklistChangeService blacklistChangeService) {
+        this.blacklistChangeService = blacklistChangeService;
+    }
+
+    @GetMapping("/changes")
+    @Operation(description = "Get changes after the given version in version order; pass the last version seen as the next since")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Any validation exception",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+    })
+    public ResponseEntity<List<BlacklistChange>> changes(
+            @RequestParam(defaultValue = "0") @Min(value = 0, message = "since must not be negative") long since,
+            @RequestParam(defaultValue = "" + MAX_CHANGES)
+            @Min(value = 1, message = "limit must be between 1 and " + MAX_CHANGES)
+            @Max(value = MAX_CHANGES, message = "limit must be between 1 and " + MAX_CHANGES) int limit) {
+        return ResponseEntity.ok(blacklistChangeService.findSince(since, limit));
+    }
+}
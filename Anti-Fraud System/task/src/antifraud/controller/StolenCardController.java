@@ -1,9 +1,13 @@
 package antifraud.controller;
 
 import antifraud.domain.AntiFraudCustomErrorMessage;
+import antifraud.domain.BlacklistFormat;
 import antifraud.model.StolenCard;
 import antifraud.rest.CardDeletionResponse;
+import antifraud.rest.BulkImportResponse;
+import antifraud.service.BlacklistBulkService;
 import antifraud.service.StolenCardService;
+import antifraud.service.TransactionStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -11,13 +15,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.util.List;
+import java.io.IOException;
 
 @RestController
 @RequestMapping(path = "/api/antifraud/stolencard", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -26,10 +33,12 @@ import java.util.List;
 public class StolenCardController {
 
     private final StolenCardService stolenCardService;
+    private final BlacklistBulkService blacklistBulkService;
 
     @Autowired
-    public StolenCardController(StolenCardService stolenCardService) {
+    public StolenCardController(StolenCardService stolenCardService, BlacklistBulkService blacklistBulkService) {
         this.stolenCardService = stolenCardService;
+        this.blacklistBulkService = blacklistBulkService;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -69,8 +78,8 @@ public class StolenCardController {
         return ResponseEntity.ok(stolenCardService.removeByNumber(number));
     }
 
-    @GetMapping
-    @Operation(description = "Get list of all stolen cards")
+    @PostMapping(path = "/bulk", consumes = {BlacklistFormat.TEXT_CSV_VALUE, TransactionStreamService.APPLICATION_NDJSON_VALUE})
+    @Operation(description = "Import stolen card numbers from CSV (first column) or NDJSON; existing entries are counted as duplicates")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
             @ApiResponse(
@@ -78,7 +87,23 @@ public class StolenCardController {
                     description = "Access denied",
                     content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
     })
-    public ResponseEntity<List<StolenCard>> fetch() {
-        return ResponseEntity.ok(stolenCardService.findAll());
+    public ResponseEntity<BulkImportResponse> importAll(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(blacklistBulkService.importStolenCards(request.getInputStream(), BlacklistFormat.ofContentType(request.getContentType())));
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, BlacklistFormat.TEXT_CSV_VALUE, TransactionStreamService.APPLICATION_NDJSON_VALUE})
+    @Operation(description = "Get list of all stolen cards, streamed as a JSON array, CSV or NDJSON depending on the Accept header")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All stolen cards in id order"),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+    })
+    public void fetch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        BlacklistFormat format = BlacklistFormat.ofAccept(request.getHeader(HttpHeaders.ACCEPT));
+        response.setContentType(format.getMediaType());
+        response.setCharacterEncoding("UTF-8");
+        blacklistBulkService.exportStolenCards(response.getOutputStream(), format);
     }
 }
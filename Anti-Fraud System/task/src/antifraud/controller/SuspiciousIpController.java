@@ -1,9 +1,13 @@
 package antifraud.controller;
 
 import antifraud.domain.AntiFraudCustomErrorMessage;
+import antifraud.domain.BlacklistFormat;
 import antifraud.rest.AddressDeletionResponse;
 import antifraud.model.Address;
+import antifraud.rest.BulkImportResponse;
+import antifraud.service.BlacklistBulkService;
 import antifraud.service.SuspiciousIpService;
+import antifraud.service.TransactionStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -11,13 +15,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.util.List;
+import java.io.IOException;
 
 @RestController
 @RequestMapping(path = "/api/antifraud/suspicious-ip", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -26,14 +33,16 @@ import java.util.List;
 public class SuspiciousIpController {
 
     private final SuspiciousIpService suspiciousIpService;
+    private final BlacklistBulkService blacklistBulkService;
 
     @Autowired
-    public SuspiciousIpController(SuspiciousIpService suspiciousIpService) {
+    public SuspiciousIpController(SuspiciousIpService suspiciousIpService, BlacklistBulkService blacklistBulkService) {
         this.suspiciousIpService = suspiciousIpService;
+        this.blacklistBulkService = blacklistBulkService;
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    @Operation(description = "Add new IP Address")
+    @Operation(description = "Add new IP Address or CIDR range")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
             @ApiResponse(
@@ -70,16 +79,54 @@ public class SuspiciousIpController {
         return ResponseEntity.ok(suspiciousIpService.removeIP(ip));
     }
 
-    @GetMapping
-    @Operation(description = "Get all IP addresses")
+    // a range cannot be passed as one path segment, so its prefix length follows the address
+    @DeleteMapping("/{ip}/{prefixLength}")
+    @Operation(description = "Remove CIDR range by address and prefix length")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "IP address not valid.",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "IP address not found!",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+    })
+    public ResponseEntity<AddressDeletionResponse> delete(@PathVariable String ip, @PathVariable String prefixLength) {
+        return ResponseEntity.ok(suspiciousIpService.removeIP(ip + '/' + prefixLength));
+    }
+
+    @PostMapping(path = "/bulk", consumes = {BlacklistFormat.TEXT_CSV_VALUE, TransactionStreamService.APPLICATION_NDJSON_VALUE})
+    @Operation(description = "Import IP addresses and CIDR ranges from CSV (first column) or NDJSON; existing entries are counted as duplicates")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+    })
+    public ResponseEntity<BulkImportResponse> importAll(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(blacklistBulkService.importSuspiciousIps(request.getInputStream(), BlacklistFormat.ofContentType(request.getContentType())));
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, BlacklistFormat.TEXT_CSV_VALUE, TransactionStreamService.APPLICATION_NDJSON_VALUE})
+    @Operation(description = "Get list of all IP addresses, streamed as a JSON array, CSV or NDJSON depending on the Accept header")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All IP addresses in id order"),
             @ApiResponse(
                     responseCode = "401",
                     description = "Access denied",
                     content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
     })
-    public ResponseEntity<List<Address>> fetch() {
-        return ResponseEntity.ok(suspiciousIpService.findAll());
+    public void fetch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        BlacklistFormat format = BlacklistFormat.ofAccept(request.getHeader(HttpHeaders.ACCEPT));
+        response.setContentType(format.getMediaType());
+        response.setCharacterEncoding("UTF-8");
+        blacklistBulkService.exportSuspiciousIps(response.getOutputStream(), format);
     }
 }
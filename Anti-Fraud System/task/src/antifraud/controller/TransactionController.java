@@ -5,7 +5,9 @@ import antifraud.rest.FeedbackUpdateRequest;
 import antifraud.domain.TransactionDto;
 import antifraud.rest.TransactionResponse;
 import antifraud.model.Transaction;
+import antifraud.service.IdempotencyService;
 import antifraud.service.TransactionService;
+import antifraud.service.TransactionStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -18,7 +20,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -27,15 +34,52 @@ import java.util.List;
 @Tag(name = "Transaction service", description = "Manage transactions")
 public class TransactionController {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+
     public final TransactionService transactionService;
+    private final TransactionStreamService transactionStreamService;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService, TransactionStreamService transactionStreamService,
+                                 IdempotencyService idempotencyService) {
         this.transactionService = transactionService;
+        this.transactionStreamService = transactionStreamService;
+        this.idempotencyService = idempotencyService;
     }
 
     @PostMapping("/transaction")
-    @Operation(description = "Save transaction")
+    @Operation(description = "Save transaction; a repeated Idempotency-Key returns the first response without saving again")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Any validation exception",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+            @ApiResponse(
+                    responseCode = "422",
+                    description = "Idempotency key already used for a different transaction",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+    })
+    public ResponseEntity<TransactionResponse> process(
+            @Valid @RequestBody TransactionDto transactionDto,
+            @RequestHeader(name = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false)
+            @Size(max = IdempotencyService.MAX_IDEMPOTENCY_KEY_LENGTH, message = IdempotencyService.IDEMPOTENCY_KEY_TOO_LONG)
+            String idempotencyKey,
+            Principal principal) {
+        if (idempotencyKey == null) {
+            return ResponseEntity.ok(transactionService.validate(transactionDto));
+        }
+        return ResponseEntity.ok(idempotencyService.execute(principal.getName(), idempotencyKey, transactionDto,
+                () -> transactionService.validate(transactionDto)));
+    }
+
+    @PostMapping("/transactions/batch")
+    @Operation(description = "Validate and save batch of transactions")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
             @ApiResponse(
@@ -47,8 +91,27 @@ public class TransactionController {
                     description = "Access denied",
                     content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
     })
-    public ResponseEntity<TransactionResponse> process(@Valid @RequestBody TransactionDto transactionDto) {
-        return ResponseEntity.ok(transactionService.validate(transactionDto));
+    public ResponseEntity<List<TransactionResponse>> processBatch(
+            @RequestBody @Size(min = 1, max = MAX_BATCH_SIZE, message = "Batch must contain between 1 and " + MAX_BATCH_SIZE + " transactions")
+            List<@Valid TransactionDto> transactions) {
+        return ResponseEntity.ok(transactionService.validateAll(transactions));
+    }
+
+    @PostMapping(path = "/transactions/stream",
+            consumes = TransactionStreamService.APPLICATION_NDJSON_VALUE,
+            produces = TransactionStreamService.APPLICATION_NDJSON_VALUE)
+    @Operation(description = "Validate and save newline-delimited stream of transactions, one response line per transaction")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Newline-delimited transaction responses or errors, in input order"),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) }),
+    })
+    public void processStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(TransactionStreamService.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        transactionStreamService.validate(request.getInputStream(), response.getOutputStream(), request.getRequestURI());
     }
 
     @PutMapping("/transaction")
@@ -7,7 +7,9 @@ import antifraud.model.User;
 import antifraud.rest.AccessUpdateRequest;
 import antifraud.rest.AccessUpdateResponse;
 import antifraud.rest.RoleChangeRequest;
+import antifraud.rest.TokenResponse;
 import antifraud.rest.UserDeletionResponse;
+import antifraud.service.TokenService;
 import antifraud.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -24,6 +26,7 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.security.Principal;
 import java.util.List;
 
 @RestController
@@ -35,6 +38,7 @@ public class UserController {
 
     private final UserService userService;
     private final PasswordEncoder encoder;
+    private final TokenService tokenService;
 
     @PostMapping("/user")
     @Operation(description = "Create user")
@@ -134,4 +138,17 @@ public class UserController {
             throws UserNotFoundException, AdminLockException {
         return ResponseEntity.ok(userService.updateAccess(request));
     }
+
+    @PostMapping("/token")
+    @Operation(description = "Exchange HTTP Basic credentials for a short-lived bearer token")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", useReturnTypeSchema = true),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Access denied",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = AntiFraudCustomErrorMessage.class)) })
+    })
+    public ResponseEntity<TokenResponse> issueToken(Principal principal) {
+        return ResponseEntity.ok(tokenService.issue(principal.getName()));
+    }
 }
@@ -0,0 +1,7 @@
+package antifraud.domain;
+
+public enum Blacklist {
+
+    STOLEN_CARD,
+    SUSPICIOUS_IP
+}
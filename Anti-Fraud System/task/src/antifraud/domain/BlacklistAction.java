@@ -0,0 +1,7 @@
+package antifraud.domain;
+
+public enum BlacklistAction {
+
+    ADD,
+    REMOVE
+}
@@ -0,0 +1,16 @@
+package antifraud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@RequiredArgsConstructor
+public class BlacklistEntry {
+
+    private String value;
+    private LocalDateTime expiresAt;
+}
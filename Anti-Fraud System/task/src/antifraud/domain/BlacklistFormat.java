@@ -0,0 +1,48 @@
+package antifraud.domain;
+
+import antifraud.service.TransactionStreamService;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+public enum BlacklistFormat {
+
+    JSON(MediaType.APPLICATION_JSON_VALUE),
+    CSV(BlacklistFormat.TEXT_CSV_VALUE),
+    NDJSON(TransactionStreamService.APPLICATION_NDJSON_VALUE);
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final String mediaType;
+
+    BlacklistFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    // the first listed type we can write wins; anything else, including no Accept header, gets the JSON array
+    public static BlacklistFormat ofAccept(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            for (BlacklistFormat format : values()) {
+                if (type.equalsTypeAndSubtype(MediaType.valueOf(format.mediaType))) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    public static BlacklistFormat ofContentType(String contentType) {
+        MediaType type = MediaType.valueOf(contentType);
+        return type.equalsTypeAndSubtype(MediaType.valueOf(TEXT_CSV_VALUE)) ? CSV : NDJSON;
+    }
+}
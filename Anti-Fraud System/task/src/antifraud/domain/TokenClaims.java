@@ -0,0 +1,17 @@
+package antifraud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@RequiredArgsConstructor
+public class TokenClaims {
+
+    private String username;
+    private UserRole role;
+    private long tokenVersion;
+    // epoch seconds
+    private long expiresAt;
+}
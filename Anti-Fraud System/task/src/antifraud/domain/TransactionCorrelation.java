@@ -0,0 +1,14 @@
+package antifraud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@RequiredArgsConstructor
+public class TransactionCorrelation {
+
+    private Long regionCount;
+    private Long ipCount;
+}
@@ -0,0 +1,25 @@
+package antifraud.domain;
+
+public enum TransactionSignal {
+
+    CARD_NUMBER,
+    IP,
+    TWO_IPS,
+    TWO_REGIONS,
+    MORE_THAN_TWO_IPS,
+    MORE_THAN_TWO_REGIONS;
+
+    public static final int COUNT = values().length;
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public static int maskOf(TransactionSignal... signals) {
+        int mask = 0;
+        for (TransactionSignal signal : signals) {
+            mask |= signal.mask();
+        }
+        return mask;
+    }
+}
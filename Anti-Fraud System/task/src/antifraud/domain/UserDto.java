@@ -1,5 +1,7 @@
 package antifraud.domain;
 
+import antifraud.id.IdSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 
 @Data
@@ -8,6 +10,7 @@ import lombok.*;
 @AllArgsConstructor
 public class UserDto {
 
+    @JsonSerialize(using = IdSerializer.class)
     private Long id;
     private String name;
     private String username;
@@ -0,0 +1,7 @@
+package antifraud.exception;
+
+public class AuthenticationThrottledException extends RuntimeException {
+    public AuthenticationThrottledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package antifraud.exception;
+
+public class CardLimitUpdateConflictException extends RuntimeException {
+    public CardLimitUpdateConflictException(String message) {
+        super(message);
+    }
+}
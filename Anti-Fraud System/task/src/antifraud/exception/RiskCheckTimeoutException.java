@@ -0,0 +1,7 @@
+package antifraud.exception;
+
+public class RiskCheckTimeoutException extends RuntimeException {
+    public RiskCheckTimeoutException(String message) {
+        super(message);
+    }
+}
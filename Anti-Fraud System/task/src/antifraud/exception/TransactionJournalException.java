@@ -0,0 +1,11 @@
+package antifraud.exception;
+
+public class TransactionJournalException extends RuntimeException {
+    public TransactionJournalException(String message) {
+        super(message);
+    }
+
+    public TransactionJournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
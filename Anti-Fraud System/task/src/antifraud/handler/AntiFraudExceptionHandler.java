@@ -9,6 +9,8 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
 import java.time.LocalDateTime;
 
 @ControllerAdvice
@@ -27,8 +29,21 @@ public class AntiFraudExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler({ConstraintViolationException.class})
+    public ResponseEntity<AntiFraudCustomErrorMessage> handleConstraintViolation(ConstraintViolationException e,
+                                                                                 HttpServletRequest request) {
+        AntiFraudCustomErrorMessage body = AntiFraudCustomErrorMessage.builder()
+                .timestamp(LocalDateTime.now().toString())
+                .status(HttpStatus.BAD_REQUEST.value())
+                .error(HttpStatus.BAD_REQUEST.getReasonPhrase())
+                .message(e.getConstraintViolations().stream().findFirst().map(ConstraintViolation::getMessage).orElse(e.getMessage()))
+                .path(request.getRequestURI())
+                .build();
+        return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler({UserAlreadyExistException.class, AddressAlreadyExistException.class,
-            CardAlreadyExistException.class, TransactionFeedbackAlreadyExistException.class})
+            CardAlreadyExistException.class, TransactionFeedbackAlreadyExistException.class, CardLimitUpdateConflictException.class})
     public ResponseEntity<AntiFraudCustomErrorMessage> handleConflict(Exception exception, HttpServletRequest request) {
         AntiFraudCustomErrorMessage body = AntiFraudCustomErrorMessage.builder()
                 .timestamp(LocalDateTime.now().toString())
@@ -66,8 +81,20 @@ public class AntiFraudExceptionHandler {
         return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
     }
 
-    @ExceptionHandler({TransactionFeedbackUpdateException.class})
-    public ResponseEntity<AntiFraudCustomErrorMessage> handleUnprocessableEntity(TransactionFeedbackUpdateException e, HttpServletRequest request) {
+    @ExceptionHandler({TransactionJournalException.class, PasswordHashingRejectedException.class})
+    public ResponseEntity<AntiFraudCustomErrorMessage> handleServiceUnavailable(Exception e, HttpServletRequest request) {
+        AntiFraudCustomErrorMessage body = AntiFraudCustomErrorMessage.builder()
+                .timestamp(LocalDateTime.now().toString())
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase())
+                .message(e.getLocalizedMessage())
+                .path(request.getRequestURI())
+                .build();
+        return new ResponseEntity<>(body, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler({TransactionFeedbackUpdateException.class, IdempotencyKeyReuseException.class})
+    public ResponseEntity<AntiFraudCustomErrorMessage> handleUnprocessableEntity(RuntimeException e, HttpServletRequest request) {
         AntiFraudCustomErrorMessage body = AntiFraudCustomErrorMessage.builder()
                 .timestamp(LocalDateTime.now().toString())
                 .status(HttpStatus.UNPROCESSABLE_ENTITY.value())
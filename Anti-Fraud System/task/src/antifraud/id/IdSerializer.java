@@ -0,0 +1,28 @@
+package antifraud.id;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+// a JavaScript number holds every integer only up to 2^53, which time-ordered ids are past within a month of EPOCH.
+// such ids are written as strings, which the id fields of requests take as well; sequence ids stay numbers
+public class IdSerializer extends StdSerializer<Long> {
+
+    // Number.MAX_SAFE_INTEGER
+    private static final long MAX_SAFE_INTEGER = (1L << 53) - 1;
+
+    public IdSerializer() {
+        super(Long.class);
+    }
+
+    @Override
+    public void serialize(Long id, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (id <= MAX_SAFE_INTEGER) {
+            generator.writeNumber(id);
+        } else {
+            generator.writeString(id.toString());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package antifraud.id;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+// database sequence ids by default; with antifraud.id.generator=time-ordered the ids are built in-process instead.
+// The sequence is still configured either way, so the schema stays the same and the setting can be switched back.
+public class PluggableIdGenerator extends SequenceStyleGenerator {
+
+    public static final String STRATEGY = "antifraud.id.PluggableIdGenerator";
+    public static final String GENERATOR_SETTING = "antifraud.id.generator";
+    public static final String NODE_ID_SETTING = "antifraud.id.node-id";
+    public static final String TIME_ORDERED = "time-ordered";
+
+    // the allocation size @SequenceGenerator defaults to, which the existing sequences were created with
+    public static final int DEFAULT_INCREMENT_SIZE = 50;
+
+    private TimeOrderedIds timeOrderedIds;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        params.putIfAbsent(INCREMENT_PARAM, String.valueOf(DEFAULT_INCREMENT_SIZE));
+        super.configure(type, params, serviceRegistry);
+
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        if (TIME_ORDERED.equals(settings.get(GENERATOR_SETTING))) {
+            Object node = settings.get(NODE_ID_SETTING);
+            timeOrderedIds = TimeOrderedIds.forNode(node == null ? 0 : Integer.parseInt(node.toString()));
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        return timeOrderedIds == null ? super.generate(session, object) : timeOrderedIds.next();
+    }
+}
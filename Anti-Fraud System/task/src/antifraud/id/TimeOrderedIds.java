@@ -0,0 +1,48 @@
+package antifraud.id;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 64-bit ids made of 41 bits of milliseconds since EPOCH, a 10-bit node id and a 12-bit sequence within the millisecond
+public final class TimeOrderedIds {
+
+    public static final int NODE_BITS = 10;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long EPOCH = Instant.parse("2022-01-01T00:00:00Z").toEpochMilli();
+
+    private static final ConcurrentMap<Integer, TimeOrderedIds> NODES = new ConcurrentHashMap<>();
+
+    private final long node;
+    // milliseconds since EPOCH shifted left by SEQUENCE_BITS, plus the sequence of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    private TimeOrderedIds(int node) {
+        this.node = node;
+    }
+
+    // one instance per node id, so every generator in the process shares the sequence
+    public static TimeOrderedIds forNode(int node) {
+        if (node < 0 || node > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + node);
+        }
+        return NODES.computeIfAbsent(node, TimeOrderedIds::new);
+    }
+
+    public long next() {
+        while (true) {
+            final long previous = last.get();
+            final long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            // within the same millisecond, after 4096 ids or when the clock steps back, keep counting from the
+            // last id so ids never repeat or go backwards
+            final long current = now > previous ? now : previous + 1;
+
+            if (last.compareAndSet(previous, current)) {
+                return (current >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | (current & SEQUENCE_MASK);
+            }
+        }
+    }
+}
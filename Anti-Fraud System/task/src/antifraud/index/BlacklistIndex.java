@@ -0,0 +1,169 @@
+package antifraud.index;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import antifraud.domain.BlacklistEntry;
+import antifraud.ip.IpAddress;
+import antifraud.model.BlacklistChange;
+import antifraud.repository.BlacklistChangeRepository;
+import antifraud.repository.BlacklistVersionRepository;
+import antifraud.repository.StolenCardRepository;
+import antifraud.repository.SuspiciousIpRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// the blacklists are read on every scored transaction but change a few times an hour: readers take the current
+// snapshot without any lock, the sync copies it, applies the changes logged since its version and swaps the copy in
+@Component
+public class BlacklistIndex {
+
+    private final StolenCardRepository stolenCardRepository;
+    private final SuspiciousIpRepository suspiciousIpRepository;
+    private final BlacklistVersionRepository versionRepository;
+    private final BlacklistChangeRepository changeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int pageSize;
+    private final AtomicReference<BlacklistSnapshot> current = new AtomicReference<>(BlacklistSnapshot.EMPTY);
+    // keeps two syncs from copying the same snapshot and losing each other's changes; also guards the wheels
+    private final Lock syncLock = new ReentrantLock();
+    // every entry with a time to live, due for the purge once it expires
+    private final Map<Blacklist, TimingWheel> expiries = new EnumMap<>(Blacklist.class);
+
+    @Autowired
+    public BlacklistIndex(StolenCardRepository stolenCardRepository,
+                          SuspiciousIpRepository suspiciousIpRepository,
+                          BlacklistVersionRepository versionRepository,
+                          BlacklistChangeRepository changeRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${antifraud.blacklist.sync-page-size}") int pageSize,
+                          @Value("${antifraud.blacklist.expiry-interval-ms}") long expiryInterval) {
+        this.stolenCardRepository = stolenCardRepository;
+        this.suspiciousIpRepository = suspiciousIpRepository;
+        this.versionRepository = versionRepository;
+        this.changeRepository = changeRepository;
+        // a sync also runs right after a local change commits, while that transaction is still bound to the thread
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.pageSize = pageSize;
+
+        meterRegistry.gauge("antifraud.blacklist.version", current, reference -> reference.get().getVersion());
+        meterRegistry.gauge("antifraud.blacklist.size", Tags.of("list", "stolen-card"),
+                current, reference -> reference.get().getStolenCardCount());
+        meterRegistry.gauge("antifraud.blacklist.size", Tags.of("list", "suspicious-ip"),
+                current, reference -> reference.get().getSuspiciousIpCount());
+
+        for (Blacklist list : Blacklist.values()) {
+            TimingWheel wheel = new TimingWheel(expiryInterval, System.currentTimeMillis());
+            expiries.put(list, wheel);
+            meterRegistry.gauge("antifraud.blacklist.pending-expiries",
+                    Tags.of("list", list.name().toLowerCase().replace('_', '-')), wheel, TimingWheel::size);
+        }
+    }
+
+    // the version is read before the lists, so whatever changes while they are read is replayed by the sync after
+    @PostConstruct
+    public void load() {
+        syncLock.lock();
+        try {
+            BlacklistSnapshot loaded = transactionTemplate.execute(status -> {
+                final long version = versionRepository.findCurrent().orElse(0L);
+                try (Stream<BlacklistEntry> numbers = stolenCardRepository.streamAllEntries();
+                     Stream<BlacklistEntry> ips = suspiciousIpRepository.streamAllEntries()) {
+                    return BlacklistSnapshot.of(version,
+                            numbers.peek(entry -> schedule(Blacklist.STOLEN_CARD, entry.getValue(), entry.getExpiresAt()))::iterator,
+                            ips.peek(entry -> schedule(Blacklist.SUSPICIOUS_IP, entry.getValue(), entry.getExpiresAt()))::iterator);
+                }
+            });
+            current.set(loaded);
+            sync();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    public BlacklistSnapshot snapshot() {
+        return current.get();
+    }
+
+    public boolean isStolen(String number) {
+        return current.get().isStolen(number, System.currentTimeMillis());
+    }
+
+    public boolean isSuspicious(String ip) {
+        return isSuspicious(IpAddress.parse(ip));
+    }
+
+    public boolean isSuspicious(IpAddress ip) {
+        return current.get().isSuspicious(ip, System.currentTimeMillis());
+    }
+
+    // the entries of a list that expired by now; the ones removed or renewed since they were scheduled are left out.
+    // every node hands out the same entries, the purge deletes each row only once
+    public List<String> expired(Blacklist list, long now) {
+        syncLock.lock();
+        try {
+            final BlacklistSnapshot snapshot = current.get();
+            List<String> expired = new ArrayList<>();
+            expiries.get(list).advance(now, value -> {
+                final long deadline = snapshot.deadlineOf(list, value);
+                if (deadline > 0 && deadline <= now) {
+                    expired.add(value);
+                }
+            });
+            return expired;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // picks up the changes made through other nodes; the ones made here are applied as soon as they commit
+    @Scheduled(fixedDelayString = "${antifraud.blacklist.sync-interval-ms}")
+    public void sync() {
+        syncLock.lock();
+        try {
+            final long latest = transactionTemplate.execute(status -> versionRepository.findCurrent().orElse(0L));
+
+            while (current.get().getVersion() < latest) {
+                final BlacklistSnapshot snapshot = current.get();
+                List<BlacklistChange> changes = transactionTemplate.execute(status -> changeRepository
+                        .findAllByVersionGreaterThanOrderByVersion(snapshot.getVersion(), PageRequest.of(0, pageSize)));
+
+                if (changes.isEmpty()) {
+                    return;
+                }
+                current.set(snapshot.withChanges(changes));
+                changes.stream()
+                        .filter(change -> change.getAction() == BlacklistAction.ADD)
+                        .forEach(change -> schedule(change.getList(), change.getValue(), change.getExpiresAt()));
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void schedule(Blacklist list, String value, LocalDateTime expiresAt) {
+        if (expiresAt != null) {
+            expiries.get(list).schedule(value, BlacklistSnapshot.deadlineOf(expiresAt));
+        }
+    }
+}
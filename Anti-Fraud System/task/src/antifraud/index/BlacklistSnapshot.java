@@ -0,0 +1,194 @@
+package antifraud.index;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import antifraud.domain.BlacklistEntry;
+import antifraud.ip.IpAddress;
+import antifraud.ip.IpRange;
+import antifraud.model.BlacklistChange;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// one consistent version of both blacklists; never changed once published, each change produces a new snapshot.
+// entries keep their deadline, so one that expires stops matching right away, before the purge removes it
+public final class BlacklistSnapshot {
+
+    // a leading 1 keeps numbers with leading zeros apart and still fits 18 digits into a long
+    private static final int MAX_PACKED_DIGITS = 18;
+    private static final long NEVER = ExpiringLongSet.NEVER;
+    // overlay deadline of a number removed from the base
+    private static final long REMOVED = -1;
+    // the overlay is folded into a new base once it holds this share of the base, so the full copy is paid
+    // once per that many changes instead of on every sync
+    private static final int COMPACTION_RATIO = 16;
+    private static final int MIN_COMPACTION_SIZE = 1024;
+
+    static final BlacklistSnapshot EMPTY = new BlacklistSnapshot(0, new ExpiringLongSet(0), new ExpiringLongSet(0), 0, Map.of(), new IpRangeTrie());
+
+    private final long version;
+    // shared by every snapshot until the next compaction, never changed
+    private final ExpiringLongSet stolenCards;
+    // the packed numbers changed since the base was built, looked up first; copied on each sync, it stays small
+    private final ExpiringLongSet stolenCardChanges;
+    private final int stolenCardCount;
+    // the few numbers that do not pack into a long, with their deadlines
+    private final Map<String, Long> otherStolenCards;
+    private final IpRangeTrie suspiciousIps;
+
+    private BlacklistSnapshot(long version, ExpiringLongSet stolenCards, ExpiringLongSet stolenCardChanges, int stolenCardCount,
+                              Map<String, Long> otherStolenCards, IpRangeTrie suspiciousIps) {
+        this.version = version;
+        this.stolenCards = stolenCards;
+        this.stolenCardChanges = stolenCardChanges;
+        this.stolenCardCount = stolenCardCount;
+        this.otherStolenCards = otherStolenCards;
+        this.suspiciousIps = suspiciousIps;
+    }
+
+    static BlacklistSnapshot of(long version, Iterable<BlacklistEntry> stolenCardEntries, Iterable<BlacklistEntry> suspiciousIpEntries) {
+        ExpiringLongSet stolenCards = new ExpiringLongSet(0);
+        Map<String, Long> otherStolenCards = new HashMap<>();
+        for (BlacklistEntry entry : stolenCardEntries) {
+            final long key = packed(entry.getValue());
+            if (key > 0) {
+                stolenCards.add(key, deadlineOf(entry.getExpiresAt()));
+            } else {
+                otherStolenCards.put(entry.getValue(), deadlineOf(entry.getExpiresAt()));
+            }
+        }
+
+        IpRangeTrie suspiciousIps = new IpRangeTrie();
+        for (BlacklistEntry entry : suspiciousIpEntries) {
+            final IpRange range = IpRange.parse(entry.getValue());
+            suspiciousIps.add(range.getAddress(), range.getPrefixLength(), deadlineOf(entry.getExpiresAt()));
+        }
+
+        return new BlacklistSnapshot(version, stolenCards, new ExpiringLongSet(0), stolenCards.size(), Map.copyOf(otherStolenCards), suspiciousIps);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getStolenCardCount() {
+        return stolenCardCount + otherStolenCards.size();
+    }
+
+    public int getSuspiciousIpCount() {
+        return suspiciousIps.size();
+    }
+
+    public boolean isStolen(String number, long now) {
+        return now < deadlineOf(Blacklist.STOLEN_CARD, number);
+    }
+
+    public boolean isSuspicious(IpAddress ip, long now) {
+        return suspiciousIps.matches(ip, now);
+    }
+
+    // copies only the structures the changes touch, and of the packed numbers only the overlay;
+    // replaying a change that is already applied leaves the snapshot as it is
+    BlacklistSnapshot withChanges(List<BlacklistChange> changes) {
+        ExpiringLongSet cards = stolenCardChanges;
+        int cardCount = stolenCardCount;
+        Map<String, Long> others = otherStolenCards;
+        IpRangeTrie ranges = suspiciousIps;
+        long lastVersion = version;
+
+        for (BlacklistChange change : changes) {
+            final boolean added = change.getAction() == BlacklistAction.ADD;
+            final String value = change.getValue();
+            final long deadline = deadlineOf(change.getExpiresAt());
+
+            if (change.getList() == Blacklist.SUSPICIOUS_IP) {
+                final IpRange range = IpRange.parse(value);
+                ranges = ranges == suspiciousIps ? ranges.copy() : ranges;
+                if (added) {
+                    ranges.add(range.getAddress(), range.getPrefixLength(), deadline);
+                } else {
+                    ranges.remove(range.getAddress(), range.getPrefixLength());
+                }
+            } else if (packed(value) > 0) {
+                final long key = packed(value);
+                final boolean present = deadlineOf(key, cards) != 0;
+                if (added || present) {
+                    cards = cards == stolenCardChanges ? cards.copy() : cards;
+                    cards.add(key, added ? deadline : REMOVED);
+                    cardCount += added == present ? 0 : added ? 1 : -1;
+                }
+            } else {
+                others = others == otherStolenCards ? new HashMap<>(others) : others;
+                if (added) {
+                    others.put(value, deadline);
+                } else {
+                    others.remove(value);
+                }
+            }
+            lastVersion = Math.max(lastVersion, change.getVersion());
+        }
+
+        ExpiringLongSet base = stolenCards;
+        if (cards.size() >= Math.max(MIN_COMPACTION_SIZE, base.size() / COMPACTION_RATIO)) {
+            base = compacted(base, cards);
+            cards = new ExpiringLongSet(0);
+        }
+        return new BlacklistSnapshot(lastVersion, base, cards, cardCount, others == otherStolenCards ? others : Map.copyOf(others), ranges);
+    }
+
+    private static ExpiringLongSet compacted(ExpiringLongSet base, ExpiringLongSet changes) {
+        final ExpiringLongSet merged = base.copy();
+        changes.forEach((key, deadline) -> {
+            if (deadline == REMOVED) {
+                merged.remove(key);
+            } else {
+                merged.add(key, deadline);
+            }
+        });
+        return merged;
+    }
+
+    // 0 when the entry is not in the list
+    long deadlineOf(Blacklist list, String value) {
+        if (list == Blacklist.SUSPICIOUS_IP) {
+            final IpRange range = IpRange.parse(value);
+            return suspiciousIps.deadlineOf(range.getAddress(), range.getPrefixLength());
+        }
+
+        final long key = packed(value);
+        return key > 0 ? deadlineOf(key, stolenCardChanges) : otherStolenCards.getOrDefault(value, 0L);
+    }
+
+    private long deadlineOf(long key, ExpiringLongSet changes) {
+        final long changed = changes.deadlineOf(key);
+        if (changed == REMOVED) {
+            return 0;
+        }
+        return changed != 0 ? changed : stolenCards.deadlineOf(key);
+    }
+
+    static long deadlineOf(LocalDateTime expiresAt) {
+        return expiresAt == null ? NEVER : expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // 0 when the number is not made of at most MAX_PACKED_DIGITS digits
+    private static long packed(String number) {
+        final int length = number.length();
+        if (length == 0 || length > MAX_PACKED_DIGITS) {
+            return 0;
+        }
+
+        long key = 1;
+        for (int i = 0; i < length; i++) {
+            final char c = number.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+}
@@ -0,0 +1,189 @@
+package antifraud.index;
+
+import java.util.Arrays;
+
+// open addressing set of positive longs, 0 marks a free slot, so there is no boxing on insert or lookup. a key added
+// with NEVER stays until it is removed; the other keys keep their deadline in a second table that only holds them.
+// nearly every stolen card is listed for good, so the set costs 8 bytes a slot instead of 16 with a deadline per key.
+// mutable only until it is published in a BlacklistSnapshot, changes after that go to a copy
+class ExpiringLongSet {
+
+    static final long NEVER = Long.MAX_VALUE;
+
+    private static final long FREE = 0;
+    private static final double MAX_LOAD = 0.75;
+
+    private final Table keys;
+    private final Table deadlines;
+
+    ExpiringLongSet(int expectedSize) {
+        this(new Table(expectedSize, false), new Table(0, true));
+    }
+
+    private ExpiringLongSet(Table keys, Table deadlines) {
+        this.keys = keys;
+        this.deadlines = deadlines;
+    }
+
+    boolean contains(long key, long now) {
+        return now < deadlineOf(key);
+    }
+
+    // 0 when the key is absent
+    long deadlineOf(long key) {
+        if (keys.slotOf(key) < 0) {
+            return 0;
+        }
+        return deadlines.size == 0 ? NEVER : deadlines.get(key, NEVER);
+    }
+
+    // adding a key again moves its deadline
+    void add(long key, long deadline) {
+        keys.put(key, 0);
+        if (deadline == NEVER) {
+            deadlines.remove(key);
+        } else {
+            deadlines.put(key, deadline);
+        }
+    }
+
+    void remove(long key) {
+        keys.remove(key);
+        deadlines.remove(key);
+    }
+
+    int size() {
+        return keys.size;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (long key : keys.keys) {
+            if (key != FREE) {
+                consumer.accept(key, deadlines.size == 0 ? NEVER : deadlines.get(key, NEVER));
+            }
+        }
+    }
+
+    ExpiringLongSet copy() {
+        return new ExpiringLongSet(keys.copy(), deadlines.copy());
+    }
+
+    interface EntryConsumer {
+        void accept(long key, long deadline);
+    }
+
+    // the keys, and with values a long for each of them in a parallel array
+    private static final class Table {
+
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        Table(int expectedSize, boolean withValues) {
+            this.keys = new long[capacityFor(expectedSize)];
+            this.values = withValues ? new long[keys.length] : null;
+        }
+
+        private Table(long[] keys, long[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        // -1 when the key is absent
+        int slotOf(long key) {
+            final int mask = keys.length - 1;
+            for (int slot = indexOf(key, mask); ; slot = (slot + 1) & mask) {
+                final long current = keys[slot];
+                if (current == key) {
+                    return slot;
+                }
+                if (current == FREE) {
+                    return -1;
+                }
+            }
+        }
+
+        long get(long key, long absent) {
+            final int slot = slotOf(key);
+            return slot < 0 ? absent : values[slot];
+        }
+
+        void put(long key, long value) {
+            if (size + 1 > keys.length * MAX_LOAD) {
+                rehash(keys.length * 2);
+            }
+
+            final int mask = keys.length - 1;
+            for (int slot = indexOf(key, mask); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key || keys[slot] == FREE) {
+                    if (keys[slot] == FREE) {
+                        keys[slot] = key;
+                        size++;
+                    }
+                    if (values != null) {
+                        values[slot] = value;
+                    }
+                    return;
+                }
+            }
+        }
+
+        void remove(long key) {
+            if (size == 0) {
+                return;
+            }
+
+            final int mask = keys.length - 1;
+            int slot = indexOf(key, mask);
+            while (keys[slot] != key) {
+                if (keys[slot] == FREE) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // shift the rest of the probe chain back, so no lookup stops early at the freed slot
+            int free = slot;
+            for (int next = (free + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+                final int home = indexOf(keys[next], mask);
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    if (values != null) {
+                        values[free] = values[next];
+                    }
+                    free = next;
+                }
+            }
+            keys[free] = FREE;
+            size--;
+        }
+
+        Table copy() {
+            return new Table(Arrays.copyOf(keys, keys.length), values == null ? null : Arrays.copyOf(values, values.length), size);
+        }
+
+        private void rehash(int capacity) {
+            final long[] previousKeys = keys;
+            final long[] previousValues = values;
+            keys = new long[capacity];
+            values = previousValues == null ? null : new long[capacity];
+            size = 0;
+            for (int i = 0; i < previousKeys.length; i++) {
+                if (previousKeys[i] != FREE) {
+                    put(previousKeys[i], previousValues == null ? 0 : previousValues[i]);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(long key, int mask) {
+        final long hash = key * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        final int minimum = (int) Math.ceil(Math.max(expectedSize, 1) / MAX_LOAD) + 1;
+        return Integer.highestOneBit(minimum - 1) << 1;
+    }
+}
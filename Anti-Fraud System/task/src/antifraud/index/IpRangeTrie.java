@@ -0,0 +1,138 @@
+package antifraud.index;
+
+import antifraud.ip.IpAddress;
+
+import java.util.Arrays;
+
+// binary trie over the 128 bits of an address, IPv4 ranges hanging below ::ffff:0:0/96; nodes live in flat arrays,
+// so a lookup is at most 128 steps and allocates nothing.
+// mutable only until it is published in a BlacklistSnapshot, changes after that go to a copy
+public class IpRangeTrie {
+
+    private static final int ROOT = 0;
+    private static final int NONE = 0;
+    private static final long NO_RANGE = 0;
+
+    // children[2 * node + bit] is the child for that bit, NONE when absent (the root is never anybody's child)
+    private int[] children = new int[128];
+    // when the range ending at a node stops matching, NO_RANGE when none ends there; adding a range again only
+    // moves its deadline, so replayed changes are harmless
+    private long[] deadlines = new long[64];
+    private int[] freeNodes = new int[16];
+    private int freeCount;
+    private int nodeCount = 1;
+    private int size;
+
+    public boolean add(IpAddress address, int prefixLength, long deadline) {
+        int node = ROOT;
+        for (int depth = 0; depth < prefixLength; depth++) {
+            final int slot = 2 * node + address.bitAt(depth);
+            if (children[slot] == NONE) {
+                // newNode may grow the arrays, so the child is linked only once it exists
+                final int child = newNode();
+                children[slot] = child;
+            }
+            node = children[slot];
+        }
+
+        final boolean added = deadlines[node] == NO_RANGE;
+        deadlines[node] = deadline;
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    public boolean remove(IpAddress address, int prefixLength) {
+        final int[] path = new int[prefixLength + 1];
+        int node = ROOT;
+        for (int depth = 0; depth < prefixLength; depth++) {
+            path[depth] = node;
+            node = children[2 * node + address.bitAt(depth)];
+            if (node == NONE) {
+                return false;
+            }
+        }
+        path[prefixLength] = node;
+
+        if (deadlines[node] == NO_RANGE) {
+            return false;
+        }
+        deadlines[node] = NO_RANGE;
+        size--;
+
+        // unlink the nodes that no longer lead to any range
+        for (int depth = prefixLength; depth > 0 && isEmpty(path[depth]); depth--) {
+            children[2 * path[depth - 1] + address.bitAt(depth - 1)] = NONE;
+            freeNode(path[depth]);
+        }
+        return true;
+    }
+
+    // a range past its deadline is skipped, a longer or shorter one around the address may still match
+    public boolean matches(IpAddress address, long now) {
+        int node = ROOT;
+        for (int depth = 0; ; depth++) {
+            if (now < deadlines[node]) {
+                return true;
+            }
+            if (depth == IpAddress.BITS) {
+                return false;
+            }
+            node = children[2 * node + address.bitAt(depth)];
+            if (node == NONE) {
+                return false;
+            }
+        }
+    }
+
+    // NO_RANGE when the exact range is not in the trie
+    public long deadlineOf(IpAddress address, int prefixLength) {
+        int node = ROOT;
+        for (int depth = 0; depth < prefixLength; depth++) {
+            node = children[2 * node + address.bitAt(depth)];
+            if (node == NONE) {
+                return NO_RANGE;
+            }
+        }
+        return deadlines[node];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public IpRangeTrie copy() {
+        IpRangeTrie copy = new IpRangeTrie();
+        copy.children = Arrays.copyOf(children, children.length);
+        copy.deadlines = Arrays.copyOf(deadlines, deadlines.length);
+        copy.freeNodes = Arrays.copyOf(freeNodes, freeNodes.length);
+        copy.freeCount = freeCount;
+        copy.nodeCount = nodeCount;
+        copy.size = size;
+        return copy;
+    }
+
+    private boolean isEmpty(int node) {
+        return deadlines[node] == NO_RANGE && children[2 * node] == NONE && children[2 * node + 1] == NONE;
+    }
+
+    private int newNode() {
+        if (freeCount > 0) {
+            return freeNodes[--freeCount];
+        }
+
+        if (nodeCount == deadlines.length) {
+            deadlines = Arrays.copyOf(deadlines, nodeCount * 2);
+            children = Arrays.copyOf(children, nodeCount * 4);
+        }
+        return nodeCount++;
+    }
+
+    private void freeNode(int node) {
+        if (freeCount == freeNodes.length) {
+            freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+        }
+        freeNodes[freeCount++] = node;
+    }
+}
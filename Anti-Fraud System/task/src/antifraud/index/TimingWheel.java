@@ -0,0 +1,89 @@
+package antifraud.index;
+
+import java.util.function.Consumer;
+
+// hierarchical timing wheel: scheduling an entry and expiring it cost O(1) however many are pending.
+// every level has SLOTS buckets spanning SLOTS times a bucket of the level below; an entry waits on the coarsest
+// level its delay fits in and drops a level each time its bucket comes round. not thread-safe
+class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // further out than that an entry waits in the last bucket of the top level and is placed again when it comes round
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickMillis;
+    // buckets[level * SLOTS + slot] heads a singly linked list of timers
+    private final Timer[] buckets = new Timer[LEVELS * SLOTS];
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    // rounded up to a whole tick, so nothing comes out before its deadline; whatever is already due comes out on the next one
+    void schedule(String value, long deadlineMillis) {
+        final long tick = Math.max(Math.floorDiv(deadlineMillis - 1, tickMillis) + 1, currentTick + 1);
+        place(new Timer(value, tick));
+        size++;
+    }
+
+    // turns the wheel up to now and hands out every entry that came due on the way
+    void advance(long nowMillis, Consumer<String> expired) {
+        final long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            currentTick++;
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                for (Timer timer = take(level), next; timer != null; timer = next) {
+                    next = timer.next;
+                    place(timer);
+                }
+            }
+
+            for (Timer timer = take(0); timer != null; timer = timer.next) {
+                size--;
+                expired.accept(timer.value);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void place(Timer timer) {
+        final long delay = Math.min(Math.max(timer.tick - currentTick, 0), MAX_DELAY);
+        int level = 0;
+        while (delay >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+
+        final int bucket = level * SLOTS + (int) (((currentTick + delay) >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timer.next = buckets[bucket];
+        buckets[bucket] = timer;
+    }
+
+    // empties the bucket the current tick points at on that level
+    private Timer take(int level) {
+        final int bucket = level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        final Timer head = buckets[bucket];
+        buckets[bucket] = null;
+        return head;
+    }
+
+    private static final class Timer {
+
+        private final String value;
+        private final long tick;
+        private Timer next;
+
+        private Timer(String value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package antifraud.index;
+
+import antifraud.domain.Region;
+import antifraud.domain.TransactionCorrelation;
+import antifraud.ip.IpAddress;
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Component
+public class TransactionWindowIndex {
+
+    public static final Duration WINDOW = Duration.ofHours(1);
+    private static final Duration RETENTION = WINDOW.multipliedBy(2);
+    // a date further ahead than this is still recorded, but does not move the retention horizon
+    private static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(5);
+
+    private final TransactionRepository transactionRepository;
+    // a node only sees the transactions it scored itself, so with several nodes every correlation is counted in the database
+    private final boolean enabled;
+    private final ConcurrentMap<String, CardWindow> windows = new ConcurrentHashMap<>();
+    private final AtomicReference<LocalDateTime> latest = new AtomicReference<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public TransactionWindowIndex(TransactionRepository transactionRepository,
+                                  @Value("${antifraud.cluster.expected-nodes}") int expectedNodes) {
+        this.transactionRepository = transactionRepository;
+        this.enabled = expectedNodes <= 1;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+
+        transactionRepository.findTopByOrderByDateDesc().ifPresent(last -> transactionRepository
+                .findAllByDateGreaterThanEqual(min(last.getDate(), maxAdvance()).minus(RETENTION))
+                .forEach(this::record));
+        loaded = true;
+    }
+
+    public void record(Transaction transaction) {
+        if (!enabled) {
+            return;
+        }
+
+        final LocalDateTime date = transaction.getDate();
+        final LocalDateTime horizon = latest.accumulateAndGet(min(date, maxAdvance()), TransactionWindowIndex::max).minus(RETENTION);
+
+        if (date.isBefore(horizon)) {
+            return;
+        }
+
+        Entry entry = new Entry(date, IpAddress.parse(transaction.getIp()), transaction.getRegion());
+        // the window is locked outside the map call, never while holding a bin of the map
+        CardWindow window = windows.computeIfAbsent(transaction.getNumber(), number -> new CardWindow());
+        while (!window.add(entry, horizon)) {
+            // evict emptied it in the meantime; drop it and retry on a fresh one
+            windows.remove(transaction.getNumber(), window);
+            window = windows.computeIfAbsent(transaction.getNumber(), number -> new CardWindow());
+        }
+    }
+
+    public Optional<TransactionCorrelation> correlate(String number, String ip, Region region, LocalDateTime date) {
+        return correlate(number, ip, region, date, List.of());
+    }
+
+    // pending are transactions of the same card scored earlier in the same unit of work; they are recorded only once
+    // it commits, so they are counted from here
+    public Optional<TransactionCorrelation> correlate(String number, String ip, Region region, LocalDateTime date,
+                                                      List<Transaction> pending) {
+        final LocalDateTime from = date.minus(WINDOW);
+
+        if (!loaded || !isCovered(from)) {
+            return Optional.empty();
+        }
+
+        final IpAddress address = IpAddress.parse(ip);
+        Set<IpAddress> ips = new HashSet<>();
+        Set<Region> regions = EnumSet.noneOf(Region.class);
+
+        CardWindow window = windows.get(number);
+        if (window != null && !window.collect(from, date, address, region, ips, regions)) {
+            return Optional.empty();
+        }
+
+        for (Transaction transaction : pending) {
+            if (transaction.getDate().isBefore(from) || transaction.getDate().isAfter(date)) {
+                continue;
+            }
+            final IpAddress other = IpAddress.parse(transaction.getIp());
+            if (!other.equals(address)) {
+                ips.add(other);
+            }
+            if (transaction.getRegion() != region) {
+                regions.add(transaction.getRegion());
+            }
+        }
+
+        return Optional.of(new TransactionCorrelation((long) regions.size(), (long) ips.size()));
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evict() {
+        final LocalDateTime newest = latest.get();
+
+        if (newest == null) {
+            return;
+        }
+
+        final LocalDateTime horizon = newest.minus(RETENTION);
+        windows.forEach((number, window) -> {
+            if (window.prune(horizon)) {
+                windows.remove(number, window);
+            }
+        });
+    }
+
+    private boolean isCovered(LocalDateTime from) {
+        final LocalDateTime newest = latest.get();
+        return newest == null || !from.isBefore(newest.minus(RETENTION));
+    }
+
+    private static LocalDateTime max(LocalDateTime current, LocalDateTime date) {
+        return current == null || date.isAfter(current) ? date : current;
+    }
+
+    private static LocalDateTime min(LocalDateTime first, LocalDateTime second) {
+        return first.isBefore(second) ? first : second;
+    }
+
+    private static LocalDateTime maxAdvance() {
+        return LocalDateTime.now().plus(MAX_CLOCK_SKEW);
+    }
+
+    private static LocalDateTime bucketOf(LocalDateTime date) {
+        return date.truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    private static final class Entry {
+
+        private final LocalDateTime date;
+        // two longs rather than text, however long the written IPv6 form
+        private final IpAddress ip;
+        private final Region region;
+
+        private Entry(LocalDateTime date, IpAddress ip, Region region) {
+            this.date = date;
+            this.ip = ip;
+            this.region = region;
+        }
+    }
+
+    // explicit locks rather than monitors, so a virtual thread waiting here does not pin its carrier thread
+    private final class CardWindow {
+
+        private final NavigableMap<LocalDateTime, List<Entry>> buckets = new TreeMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // set once prune has emptied the window and it is about to leave the map, so nothing is added to it any more
+        private boolean retired;
+
+        // false when the window is retired
+        boolean add(Entry entry, LocalDateTime horizon) {
+            lock.writeLock().lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                buckets.computeIfAbsent(bucketOf(entry.date), bucket -> new ArrayList<>(2)).add(entry);
+                buckets.headMap(bucketOf(horizon), false).clear();
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // true when the window is empty and retired
+        boolean prune(LocalDateTime horizon) {
+            lock.writeLock().lock();
+            try {
+                buckets.headMap(bucketOf(horizon), false).clear();
+                retired = buckets.isEmpty();
+                return retired;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // false when part of the window has already been pruned
+        boolean collect(LocalDateTime from, LocalDateTime to, IpAddress ip, Region region, Set<IpAddress> ips, Set<Region> regions) {
+            lock.readLock().lock();
+            try {
+                // checked under the lock, so no bucket of the window can be pruned while it is read
+                if (!isCovered(from)) {
+                    return false;
+                }
+
+                for (List<Entry> bucket : buckets.subMap(bucketOf(from), true, to, true).values()) {
+                    for (Entry entry : bucket) {
+                        if (entry.date.isBefore(from) || entry.date.isAfter(to)) {
+                            continue;
+                        }
+                        if (!entry.ip.equals(ip)) {
+                            ips.add(entry.ip);
+                        }
+                        if (entry.region != region) {
+                            regions.add(entry.region);
+                        }
+                    }
+                }
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
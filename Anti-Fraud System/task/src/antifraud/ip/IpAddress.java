@@ -0,0 +1,253 @@
+package antifraud.ip;
+
+import java.util.Arrays;
+
+// an IPv4 or IPv6 address as a 128-bit key held in two longs; IPv4 addresses live in the IPv4-mapped block ::ffff:0:0/96,
+// so both families share one key space and equal addresses compare equal whichever way they were written
+public final class IpAddress {
+
+    public static final int BITS = 128;
+    public static final int BYTES = BITS / Byte.SIZE;
+    public static final int IPV4_BITS = 32;
+    // where an IPv4 address starts within the 128 bits
+    public static final int IPV4_OFFSET = BITS - IPV4_BITS;
+
+    private static final long IPV4_MAPPED = 0xffffL << IPV4_BITS;
+    private static final int GROUPS = 8;
+    private static final int GROUP_BITS = 16;
+
+    private final long high;
+    private final long low;
+
+    public IpAddress(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static IpAddress parse(String text) {
+        IpAddress address = tryParse(text, 0, text.length());
+        if (address == null) {
+            throw new IllegalArgumentException("Not an IP address: " + text);
+        }
+        return address;
+    }
+
+    public static boolean isValid(String text) {
+        return tryParse(text, 0, text.length()) != null;
+    }
+
+    // null when text[from, to) is neither a dotted quad nor an IPv6 address
+    static IpAddress tryParse(String text, int from, int to) {
+        final int colon = text.indexOf(':', from);
+        if (colon < 0 || colon >= to) {
+            final long ipv4 = parseIpv4(text, from, to);
+            return ipv4 < 0 ? null : new IpAddress(0, IPV4_MAPPED | ipv4);
+        }
+        return parseIpv6(text, from, to);
+    }
+
+    public static IpAddress fromBytes(byte[] bytes) {
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            high = (high << Byte.SIZE) | (bytes[i] & 0xff);
+            low = (low << Byte.SIZE) | (bytes[Long.BYTES + i] & 0xff);
+        }
+        return new IpAddress(high, low);
+    }
+
+    public byte[] toBytes() {
+        return toBytes(new byte[BYTES]);
+    }
+
+    byte[] toBytes(byte[] bytes) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            bytes[i] = (byte) (high >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+            bytes[Long.BYTES + i] = (byte) (low >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+        }
+        return bytes;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public boolean isIpv4() {
+        return high == 0 && (low & ~0xffffffffL) == IPV4_MAPPED;
+    }
+
+    // bit 0 is the most significant
+    public int bitAt(int index) {
+        return (int) (index < Long.SIZE ? high >>> (Long.SIZE - 1 - index) : low >>> (BITS - 1 - index)) & 1;
+    }
+
+    // whether all the bits from prefixLength on are zero
+    public boolean hasNoBitsAfter(int prefixLength) {
+        if (prefixLength >= Long.SIZE) {
+            return prefixLength == BITS || low << (prefixLength - Long.SIZE) == 0;
+        }
+        return low == 0 && high << prefixLength == 0;
+    }
+
+    // dotted quad for IPv4, the RFC 5952 form otherwise: lower case, no leading zeros, the longest run of zero groups as ::
+    @Override
+    public String toString() {
+        if (isIpv4()) {
+            return (low >>> 24 & 0xff) + "." + (low >>> 16 & 0xff) + "." + (low >>> 8 & 0xff) + "." + (low & 0xff);
+        }
+
+        int runStart = -1;
+        int runLength = 1;
+        for (int i = 0, start = -1; i <= GROUPS; i++) {
+            if (i < GROUPS && groupAt(i) == 0) {
+                start = start < 0 ? i : start;
+            } else if (start >= 0) {
+                if (i - start > runLength) {
+                    runStart = start;
+                    runLength = i - start;
+                }
+                start = -1;
+            }
+        }
+
+        StringBuilder text = new StringBuilder(39);
+        for (int i = 0; i < GROUPS; i++) {
+            if (i == runStart) {
+                text.append("::");
+                i += runLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(groupAt(i)));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IpAddress that = (IpAddress) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high * 31 + low);
+    }
+
+    private int groupAt(int index) {
+        final long half = index < GROUPS / 2 ? high : low;
+        return (int) (half >>> (GROUP_BITS * (GROUPS / 2 - 1 - index % (GROUPS / 2)))) & 0xffff;
+    }
+
+    // -1 unless text[from, to) is four decimal octets without leading zeros
+    private static long parseIpv4(String text, int from, int to) {
+        long address = 0;
+        int octets = 0;
+        int i = from;
+        while (octets < 4) {
+            final int start = i;
+            int octet = 0;
+            while (i < to && i - start < 3 && digitOf(text.charAt(i), 10) >= 0) {
+                octet = octet * 10 + digitOf(text.charAt(i++), 10);
+            }
+            if (i == start || octet > 255 || (i - start > 1 && text.charAt(start) == '0')) {
+                return -1;
+            }
+
+            address = (address << Byte.SIZE) | octet;
+            if (++octets < 4) {
+                if (i == to || text.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == to ? address : -1;
+    }
+
+    private static IpAddress parseIpv6(String text, int from, int to) {
+        final int[] groups = new int[GROUPS];
+        int count = 0;
+        int compressAt = -1;
+        int i = from;
+
+        if (text.startsWith("::", i)) {
+            compressAt = 0;
+            i += 2;
+        }
+
+        while (i < to) {
+            final int start = i;
+            int group = 0;
+            while (i < to && i - start < 4 && digitOf(text.charAt(i), 16) >= 0) {
+                group = (group << 4) | digitOf(text.charAt(i++), 16);
+            }
+
+            // a dotted quad may stand for the last two groups, as in ::ffff:10.0.0.1
+            if (i < to && text.charAt(i) == '.') {
+                final long ipv4 = count <= GROUPS - 2 ? parseIpv4(text, start, to) : -1;
+                if (ipv4 < 0) {
+                    return null;
+                }
+                groups[count++] = (int) (ipv4 >>> GROUP_BITS);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                break;
+            }
+
+            if (i == start || count == GROUPS) {
+                return null;
+            }
+            groups[count++] = group;
+
+            if (i == to) {
+                break;
+            }
+            if (text.charAt(i) != ':' || ++i == to) {
+                return null;
+            }
+            if (text.charAt(i) == ':') {
+                if (compressAt >= 0) {
+                    return null;
+                }
+                compressAt = count;
+                i++;
+            }
+        }
+
+        if (compressAt < 0 ? count != GROUPS : count == GROUPS) {
+            return null;
+        }
+        if (compressAt >= 0) {
+            final int moved = count - compressAt;
+            System.arraycopy(groups, compressAt, groups, GROUPS - moved, moved);
+            Arrays.fill(groups, compressAt, GROUPS - moved, 0);
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int g = 0; g < GROUPS / 2; g++) {
+            high = (high << GROUP_BITS) | groups[g];
+            low = (low << GROUP_BITS) | groups[GROUPS / 2 + g];
+        }
+        return new IpAddress(high, low);
+    }
+
+    // ASCII only, unlike Character.digit
+    private static int digitOf(char c, int radix) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (radix == 16 && (c | 0x20) >= 'a' && (c | 0x20) <= 'f') {
+            return (c | 0x20) - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,19 @@
+package antifraud.ip;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+// stores an address as its 16 key bytes instead of text, so IPv6 forms neither bloat the indexes nor compare slower
+@Converter
+public class IpAddressConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String ip) {
+        return ip == null ? null : IpAddress.parse(ip).toBytes();
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] bytes) {
+        return bytes == null ? null : IpAddress.fromBytes(bytes).toString();
+    }
+}
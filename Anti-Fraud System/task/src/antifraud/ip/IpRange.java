@@ -0,0 +1,111 @@
+package antifraud.ip;
+
+// a CIDR block such as 10.1.0.0/16 or 2001:db8::/32, a bare address being a block of one. the prefix length counts
+// within the 128-bit key space, so an IPv4 block is one that starts with the IPv4-mapped prefix
+public final class IpRange {
+
+    public static final int BYTES = IpAddress.BYTES + 1;
+
+    private static final char PREFIX_SEPARATOR = '/';
+
+    private final IpAddress address;
+    private final int prefixLength;
+
+    public IpRange(IpAddress address, int prefixLength) {
+        this.address = address;
+        this.prefixLength = prefixLength;
+    }
+
+    public static IpRange parse(String text) {
+        IpRange range = tryParse(text);
+        if (range == null) {
+            throw new IllegalArgumentException("Not an IP range: " + text);
+        }
+        return range;
+    }
+
+    // the prefix length is written for the family of the address, 0..32 after a dotted quad, 0..128 otherwise;
+    // no bits may be set past it
+    public static boolean isValid(String text) {
+        return tryParse(text) != null;
+    }
+
+    private static IpRange tryParse(String text) {
+        final int separator = text.indexOf(PREFIX_SEPARATOR);
+        final int end = separator < 0 ? text.length() : separator;
+        final IpAddress address = IpAddress.tryParse(text, 0, end);
+        if (address == null) {
+            return null;
+        }
+
+        final boolean dotted = text.lastIndexOf(':', end) < 0;
+        final int maxLength = dotted ? IpAddress.IPV4_BITS : IpAddress.BITS;
+        final int written = separator < 0 ? maxLength : parsePrefixLength(text, separator + 1, maxLength);
+        if (written < 0) {
+            return null;
+        }
+
+        final int prefixLength = dotted ? IpAddress.IPV4_OFFSET + written : written;
+        return address.hasNoBitsAfter(prefixLength) ? new IpRange(address, prefixLength) : null;
+    }
+
+    public static IpRange fromBytes(byte[] bytes) {
+        return new IpRange(IpAddress.fromBytes(bytes), bytes[IpAddress.BYTES] & 0xff);
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = address.toBytes(new byte[BYTES]);
+        bytes[IpAddress.BYTES] = (byte) prefixLength;
+        return bytes;
+    }
+
+    public IpAddress getAddress() {
+        return address;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    // the one text form of a range: IPv4 blocks dotted with their IPv4 prefix length, a single address without any
+    @Override
+    public String toString() {
+        if (prefixLength == IpAddress.BITS) {
+            return address.toString();
+        }
+        // a valid block starting at an IPv4-mapped address is never wider than ::ffff:0:0/96
+        final int written = address.isIpv4() ? prefixLength - IpAddress.IPV4_OFFSET : prefixLength;
+        return address.toString() + PREFIX_SEPARATOR + written;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        IpRange that = (IpRange) o;
+        return prefixLength == that.prefixLength && address.equals(that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * address.hashCode() + prefixLength;
+    }
+
+    // -1 unless the rest of the text from from on is a decimal of at most maxLength without leading zeros
+    private static int parsePrefixLength(String text, int from, int maxLength) {
+        final int length = text.length() - from;
+        if (length < 1 || length > 3 || (length > 1 && text.charAt(from) == '0')) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = from; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= maxLength ? value : -1;
+    }
+}
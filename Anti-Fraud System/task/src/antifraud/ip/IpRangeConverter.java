@@ -0,0 +1,19 @@
+package antifraud.ip;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+// the 16 address bytes followed by the prefix length
+@Converter
+public class IpRangeConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String range) {
+        return range == null ? null : IpRange.parse(range).toBytes();
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] bytes) {
+        return bytes == null ? null : IpRange.fromBytes(bytes).toString();
+    }
+}
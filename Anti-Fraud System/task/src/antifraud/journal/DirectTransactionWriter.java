@@ -0,0 +1,36 @@
+package antifraud.journal;
+
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "antifraud.write-behind.enabled", havingValue = "false", matchIfMissing = true)
+public class DirectTransactionWriter implements TransactionWriter {
+
+    private final TransactionRepository transactionRepository;
+
+    @Autowired
+    public DirectTransactionWriter(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
+    }
+
+    @Override
+    public void write(Transaction transaction) {
+        transactionRepository.save(transaction);
+    }
+
+    @Override
+    public void writeAll(List<Transaction> transactions) {
+        transactionRepository.saveAll(transactions);
+    }
+
+    @Override
+    public void flush() {
+        // every write is already part of the caller's database transaction
+    }
+}
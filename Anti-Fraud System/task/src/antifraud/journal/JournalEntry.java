@@ -0,0 +1,44 @@
+package antifraud.journal;
+
+import antifraud.domain.Region;
+import antifraud.domain.TransactionValidationResult;
+import antifraud.model.Transaction;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@RequiredArgsConstructor
+public class JournalEntry {
+
+    private Long sequence;
+    private Long amount;
+    private String ip;
+    private String number;
+    private Region region;
+    private LocalDateTime date;
+    private TransactionValidationResult result;
+    // set on an entry that takes back an earlier one whose database transaction failed to commit
+    private Long cancels;
+
+    public JournalEntry(Transaction transaction) {
+        this(null, transaction.getAmount(), transaction.getIp(), transaction.getNumber(),
+                transaction.getRegion(), transaction.getDate(), transaction.getResult(), null);
+    }
+
+    public static JournalEntry cancelling(long sequence) {
+        JournalEntry entry = new JournalEntry();
+        entry.setCancels(sequence);
+        return entry;
+    }
+
+    public Transaction toTransaction() {
+        Transaction transaction = new Transaction(amount, ip, number, region, date);
+        transaction.setResult(result);
+        transaction.setJournalSequence(sequence);
+        return transaction;
+    }
+}
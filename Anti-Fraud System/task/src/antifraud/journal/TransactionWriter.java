@@ -0,0 +1,15 @@
+package antifraud.journal;
+
+import antifraud.model.Transaction;
+
+import java.util.List;
+
+public interface TransactionWriter {
+
+    void write(Transaction transaction);
+
+    void writeAll(List<Transaction> transactions);
+
+    // blocks until every transaction written so far can be read back from the repository
+    void flush();
+}
@@ -0,0 +1,452 @@
+package antifraud.journal;
+
+import antifraud.exception.TransactionJournalException;
+import antifraud.index.TransactionWindowIndex;
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "antifraud.write-behind.enabled", havingValue = "true")
+public class WriteBehindTransactionWriter implements TransactionWriter {
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final long POLL_MILLIS = 100L;
+    private static final long RETRY_MILLIS = 1000L;
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionWindowIndex windowIndex;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter entryWriter;
+    private final Path directory;
+    private final long segmentSize;
+    private final int batchSize;
+    private final long flushTimeoutMillis;
+
+    private final BlockingQueue<PendingEntry> pending = new LinkedBlockingQueue<>();
+    private final BlockingQueue<JournalEntry> committed = new LinkedBlockingQueue<>();
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ReentrantLock appliedLock = new ReentrantLock();
+    private final Condition appliedCondition = appliedLock.newCondition();
+
+    private volatile long appliedSequence;
+    private volatile boolean running = true;
+    private volatile boolean applying = true;
+    private FileChannel segment;
+    private Thread committer;
+    private Thread applier;
+
+    @Autowired
+    public WriteBehindTransactionWriter(TransactionRepository transactionRepository,
+                                        PlatformTransactionManager transactionManager,
+                                        TransactionWindowIndex windowIndex,
+                                        ObjectMapper objectMapper,
+                                        @Value("${antifraud.write-behind.journal-dir}") String directory,
+                                        @Value("${antifraud.write-behind.segment-size}") long segmentSize,
+                                        @Value("${antifraud.write-behind.batch-size}") int batchSize,
+                                        @Value("${antifraud.write-behind.flush-timeout-ms}") long flushTimeoutMillis) {
+        this.transactionRepository = transactionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowIndex = windowIndex;
+        this.objectMapper = objectMapper;
+        this.entryWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.batchSize = batchSize;
+        this.flushTimeoutMillis = flushTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        recover();
+        openSegment(sequence.get() + 1);
+
+        committer = new Thread(this::commitLoop, "transaction-journal-committer");
+        applier = new Thread(this::applyLoop, "transaction-journal-applier");
+        committer.start();
+        applier.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        committer.join();
+        failLeftovers();
+        applying = false;
+        applier.join();
+        segment.close();
+    }
+
+    @Override
+    public void write(Transaction transaction) {
+        writeAll(List.of(transaction));
+    }
+
+    // journaled while the surrounding transaction commits, so the entries of one that rolls back never reach the journal
+    @Override
+    public void writeAll(List<Transaction> transactions) {
+        final List<JournalEntry> entries = transactions.stream().map(JournalEntry::new).collect(Collectors.toList());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            await(append(entries));
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                await(append(entries));
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED && entries.get(0).getSequence() != null) {
+                    cancel(entries);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void flush() {
+        final long target = sequence.get();
+        long nanos = TimeUnit.MILLISECONDS.toNanos(flushTimeoutMillis);
+
+        appliedLock.lock();
+        try {
+            while (appliedSequence < target) {
+                if (nanos <= 0L) {
+                    throw new TransactionJournalException("Journaled transactions were not applied in time");
+                }
+                nanos = appliedCondition.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionJournalException("Interrupted while waiting for the transaction journal", e);
+        } finally {
+            appliedLock.unlock();
+        }
+    }
+
+    private List<CompletableFuture<Void>> append(List<JournalEntry> entries) {
+        if (!running) {
+            throw new TransactionJournalException("Transaction journal is closed");
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(entries.size());
+        for (JournalEntry entry : entries) {
+            PendingEntry pendingEntry = new PendingEntry(entry);
+            pending.add(pendingEntry);
+            // the journal closed in between, and the committer may already be gone
+            if (!running && pending.remove(pendingEntry)) {
+                pendingEntry.durable.completeExceptionally(new TransactionJournalException("Transaction journal is closed"));
+            }
+            futures.add(pendingEntry.durable);
+        }
+        return futures;
+    }
+
+    private void await(List<CompletableFuture<Void>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(flushTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new TransactionJournalException("Transaction could not be journaled", e.getCause());
+        } catch (TimeoutException e) {
+            throw new TransactionJournalException("Transaction was not journaled in time", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionJournalException("Interrupted while waiting for the transaction journal", e);
+        }
+    }
+
+    // the database commit failed after the entries were journaled; the applier drops them, or deletes their rows
+    private void cancel(List<JournalEntry> entries) {
+        try {
+            await(append(entries.stream()
+                    .map(entry -> JournalEntry.cancelling(entry.getSequence()))
+                    .collect(Collectors.toList())));
+        } catch (TransactionJournalException e) {
+            log.error("Could not cancel {} journal entries of a failed commit, they will be applied", entries.size(), e);
+        }
+    }
+
+    private void failLeftovers() {
+        List<PendingEntry> leftovers = new ArrayList<>();
+        pending.drainTo(leftovers);
+        leftovers.forEach(pendingEntry -> pendingEntry.durable.completeExceptionally(
+                new TransactionJournalException("Transaction journal is closed")));
+    }
+
+    // the only thread that assigns sequences and appends, so the journal is ordered by sequence
+    private void commitLoop() {
+        List<PendingEntry> group = new ArrayList<>();
+
+        while (running || !pending.isEmpty()) {
+            try {
+                PendingEntry first = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                pending.drainTo(group);
+                commit(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    // sequence only moves once the group is on disk, so flush never waits for entries a failed commit took back
+    private void commit(List<PendingEntry> group) {
+        long start = -1L;
+        long last = sequence.get();
+
+        try {
+            start = segment.position();
+            for (PendingEntry pendingEntry : group) {
+                pendingEntry.entry.setSequence(++last);
+                byte[] line = entryWriter.writeValueAsBytes(pendingEntry.entry);
+                ByteBuffer buffer = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n').flip();
+                while (buffer.hasRemaining()) {
+                    segment.write(buffer);
+                }
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            log.error("Group commit of {} journal entries failed", group.size(), e);
+            truncate(start);
+            group.forEach(pendingEntry -> {
+                pendingEntry.entry.setSequence(null);
+                pendingEntry.durable.completeExceptionally(e);
+            });
+            return;
+        }
+        sequence.set(last);
+
+        group.forEach(pendingEntry -> {
+            committed.add(pendingEntry.entry);
+            pendingEntry.durable.complete(null);
+        });
+
+        rollIfFull();
+    }
+
+    private void truncate(long position) {
+        try {
+            if (position >= 0L) {
+                segment.truncate(position);
+                segment.position(position);
+            }
+        } catch (IOException e) {
+            log.error("Could not truncate journal segment after failed commit", e);
+        }
+    }
+
+    private void rollIfFull() {
+        try {
+            if (segment.size() >= segmentSize) {
+                segment.close();
+                openSegment(sequence.get() + 1);
+            }
+        } catch (IOException e) {
+            log.error("Could not roll journal segment", e);
+        }
+    }
+
+    private void applyLoop() {
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+
+        while (applying || !committed.isEmpty()) {
+            try {
+                JournalEntry first = committed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                committed.drainTo(batch, batchSize - 1);
+                applyWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void applyWithRetry(List<JournalEntry> batch) throws InterruptedException {
+        while (true) {
+            try {
+                apply(batch);
+                return;
+            } catch (RuntimeException e) {
+                log.error("Applying {} journal entries failed, retrying", batch.size(), e);
+                if (!applying) {
+                    // left in the journal and replayed on the next start
+                    return;
+                }
+                Thread.sleep(RETRY_MILLIS);
+            }
+        }
+    }
+
+    // entries come in sequence order, so a cancelled entry is either earlier in the batch or already in the table
+    private void apply(List<JournalEntry> batch) {
+        Map<Long, Transaction> inserts = new LinkedHashMap<>();
+        List<Long> cancelled = new ArrayList<>();
+        for (JournalEntry entry : batch) {
+            if (entry.getCancels() == null) {
+                inserts.put(entry.getSequence(), entry.toTransaction());
+            } else if (inserts.remove(entry.getCancels()) == null) {
+                cancelled.add(entry.getCancels());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            transactionRepository.saveAll(inserts.values());
+            if (!cancelled.isEmpty()) {
+                transactionRepository.deleteAllByJournalSequenceIn(cancelled);
+            }
+        });
+
+        markApplied(batch.get(batch.size() - 1).getSequence());
+        deleteAppliedSegments();
+    }
+
+    private void markApplied(long applied) {
+        appliedLock.lock();
+        try {
+            appliedSequence = applied;
+            appliedCondition.signalAll();
+        } finally {
+            appliedLock.unlock();
+        }
+    }
+
+    // a segment is applied once every sequence before the first one of the following segment is
+    private void deleteAppliedSegments() {
+        Map.Entry<Long, Path> oldest = segments.firstEntry();
+        Long next = oldest == null ? null : segments.higherKey(oldest.getKey());
+
+        while (next != null && next - 1 <= appliedSequence) {
+            try {
+                Files.deleteIfExists(oldest.getValue());
+            } catch (IOException e) {
+                log.warn("Could not delete applied journal segment {}", oldest.getValue(), e);
+                return;
+            }
+            segments.remove(oldest.getKey());
+            oldest = segments.firstEntry();
+            next = segments.higherKey(oldest.getKey());
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments.put(firstSequence, path);
+    }
+
+    // the highest journal sequence in the table is the watermark: rows are applied in sequence order, batch by batch
+    private void recover() throws IOException {
+        final long applied = transactionRepository.findTopByJournalSequenceNotNullOrderByJournalSequenceDesc()
+                .map(Transaction::getJournalSequence)
+                .orElse(0L);
+        long last = applied;
+        List<JournalEntry> replay = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted().collect(Collectors.toList())) {
+                String name = path.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path);
+
+                for (JournalEntry entry : read(path)) {
+                    last = Math.max(last, entry.getSequence());
+                    if (entry.getSequence() > applied) {
+                        replay.add(entry);
+                    }
+                }
+            }
+        }
+
+        sequence.set(last);
+        appliedSequence = applied;
+
+        for (int from = 0; from < replay.size(); from += batchSize) {
+            apply(replay.subList(from, Math.min(replay.size(), from + batchSize)));
+        }
+        final Set<Long> cancelled = replay.stream().map(JournalEntry::getCancels).filter(Objects::nonNull).collect(Collectors.toSet());
+        replay.stream()
+                .filter(entry -> entry.getCancels() == null && !cancelled.contains(entry.getSequence()))
+                .forEach(entry -> windowIndex.record(entry.toTransaction()));
+
+        if (!replay.isEmpty()) {
+            log.info("Replayed {} journaled transactions", replay.size());
+        }
+    }
+
+    private List<JournalEntry> read(Path path) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    entries.add(objectMapper.readValue(line, JournalEntry.class));
+                } catch (IOException e) {
+                    // a torn write at the tail was never acknowledged
+                    log.warn("Ignoring unreadable journal tail in {}", path);
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static final class PendingEntry {
+
+        private final JournalEntry entry;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingEntry(JournalEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package antifraud.model;
 
+import antifraud.id.IdSerializer;
+import antifraud.id.PluggableIdGenerator;
+import antifraud.ip.IpRange;
+import antifraud.ip.IpRangeConverter;
 import antifraud.util.AntiFraudUtil;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotEmpty;
+import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Getter
@@ -17,15 +27,22 @@ import java.util.Objects;
 @RequiredArgsConstructor
 @Entity
 @Table(name = "addresses")
-@SequenceGenerator(name = "address_sequence", sequenceName = "AddressSequence")
+@GenericGenerator(name = "address_sequence", strategy = PluggableIdGenerator.STRATEGY,
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "AddressSequence"))
 public class Address {
 
     @Id
     @Column(name = "address_id")
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "address_sequence")
+    @GeneratedValue(generator = "address_sequence")
+    @JsonSerialize(using = IdSerializer.class)
     private Long id;
     @NotEmpty(message = "ip address must not be empty")
+    @Column(unique = true, columnDefinition = "binary(" + IpRange.BYTES + ")")
+    @Convert(converter = IpRangeConverter.class)
     private String ip;
+    // none keeps the entry until it is deleted
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime expiresAt;
 
     @Override
     public boolean equals(Object o) {
@@ -35,10 +52,23 @@ public class Address {
         return id != null && Objects.equals(id, address.id);
     }
 
+    // either a single address or a CIDR prefix
     @AssertTrue(message = "ip address is not valid")
     @JsonIgnore
     public boolean isValidIp() {
-        return ip != null && AntiFraudUtil.isValidIP().test(ip);
+        return ip != null && AntiFraudUtil.isValidIpRange().test(ip);
+    }
+
+    @AssertTrue(message = "Expiry must be in the future")
+    @JsonIgnore
+    public boolean isValidExpiry() {
+        return !isExpired();
+    }
+
+    // an expired entry no longer matches, even while its row waits for the purge
+    @JsonIgnore
+    public boolean isExpired() {
+        return expiresAt != null && !expiresAt.isAfter(LocalDateTime.now());
     }
 
     @Override
@@ -0,0 +1,54 @@
+package antifraud.model;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@RequiredArgsConstructor
+@Entity
+@Table(name = "blacklist_changes")
+public class BlacklistChange {
+
+    // taken from BlacklistVersion, so changes commit in version order
+    @Id
+    private Long version;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "blacklist")
+    private Blacklist list;
+
+    @Enumerated(EnumType.STRING)
+    private BlacklistAction action;
+
+    @Column(name = "entry")
+    private String value;
+
+    // set on additions with a time to live
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime expiresAt;
+
+    private LocalDateTime date;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        BlacklistChange that = (BlacklistChange) o;
+        return version != null && Objects.equals(version, that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,40 @@
+package antifraud.model;
+
+import lombok.*;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.util.Objects;
+
+// a single row; incrementing it locks the row until commit, which serializes blacklist changes across nodes
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@RequiredArgsConstructor
+@Entity
+@Table(name = "blacklist_version")
+public class BlacklistVersion {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+
+    private Long version;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        BlacklistVersion that = (BlacklistVersion) o;
+        return id != null && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
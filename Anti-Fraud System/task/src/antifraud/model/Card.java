@@ -1,7 +1,11 @@
 package antifraud.model;
 
+import antifraud.id.PluggableIdGenerator;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import java.util.Objects;
@@ -12,14 +16,17 @@ import java.util.Objects;
 @Setter
 @ToString
 @Entity
-@SequenceGenerator(name = "card_sequence", sequenceName = "CardSequence")
+@Table(name = "card", uniqueConstraints = @UniqueConstraint(name = Card.NUMBER_CONSTRAINT, columnNames = "number"))
+@GenericGenerator(name = "card_sequence", strategy = PluggableIdGenerator.STRATEGY,
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "CardSequence"))
 public class Card {
 
-    private static transient final long MAX_ALLOWED = 200L;
-    private static transient final long MAX_MANUAL = 1500L;
+    public static transient final long MAX_ALLOWED = 200L;
+    public static transient final long MAX_MANUAL = 1500L;
+    public static final String NUMBER_CONSTRAINT = "uk_card_number";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "card_sequence")
+    @GeneratedValue(generator = "card_sequence")
     @Column(name = "card_id")
     private Long id;
     private String number;
@@ -27,6 +34,9 @@ public class Card {
     private Long maxAllowed;
     @Column(name = "max_manual")
     private Long maxManual;
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
 
     {
         this.maxAllowed = MAX_ALLOWED;
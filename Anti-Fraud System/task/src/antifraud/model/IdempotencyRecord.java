@@ -0,0 +1,77 @@
+package antifraud.model;
+
+import antifraud.domain.TransactionValidationResult;
+import lombok.*;
+import org.hibernate.Hibernate;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idx_idempotency_keys_created", columnList = "created"))
+public class IdempotencyRecord implements Persistable<String> {
+
+    @Id
+    @Column(name = "idempotency_key", length = 512)
+    private String key;
+
+    private String fingerprint;
+
+    @Enumerated(EnumType.STRING)
+    private TransactionValidationResult result;
+
+    private String info;
+
+    private LocalDateTime created;
+
+    // the key is assigned, so without this a save of a new record would be a merge, and a merge overwrites the row
+    // another request stored for the same key instead of failing on it
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
+
+    public IdempotencyRecord(String key, String fingerprint, TransactionValidationResult result, String info,
+                             LocalDateTime created) {
+        this.key = key;
+        this.fingerprint = fingerprint;
+        this.result = result;
+        this.info = info;
+        this.created = created;
+    }
+
+    @Override
+    public String getId() {
+        return key;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        IdempotencyRecord that = (IdempotencyRecord) o;
+        return key != null && Objects.equals(key, that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
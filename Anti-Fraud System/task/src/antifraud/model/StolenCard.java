@@ -1,13 +1,21 @@
 package antifraud.model;
 
+import antifraud.id.IdSerializer;
+import antifraud.id.PluggableIdGenerator;
 import antifraud.util.AntiFraudUtil;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.NotEmpty;
+import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Getter
@@ -16,16 +24,21 @@ import java.util.Objects;
 @AllArgsConstructor
 @RequiredArgsConstructor
 @Entity
-@SequenceGenerator(name = "stolen_card_sequence", sequenceName = "StolenCardSequence")
+@GenericGenerator(name = "stolen_card_sequence", strategy = PluggableIdGenerator.STRATEGY,
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "StolenCardSequence"))
 public class StolenCard {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stolen_card_sequence")
+    @GeneratedValue(generator = "stolen_card_sequence")
     @Column(name = "stolen_card_id")
+    @JsonSerialize(using = IdSerializer.class)
     private Long id;
 
     @NotEmpty
+    @Column(unique = true)
     private String number;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime expiresAt;
 
     @Override
     public boolean equals(Object o) {
@@ -41,6 +54,17 @@ public class StolenCard {
         return number != null && AntiFraudUtil.isValidNumber().test(number);
     }
 
+    @AssertTrue(message = "Expiry must be in the future")
+    @JsonIgnore
+    public boolean isValidExpiry() {
+        return !isExpired();
+    }
+
+    @JsonIgnore
+    public boolean isExpired() {
+        return expiresAt != null && !expiresAt.isAfter(LocalDateTime.now());
+    }
+
     @Override
     public int hashCode() {
         return getClass().hashCode();
@@ -2,9 +2,18 @@ package antifraud.model;
 
 import antifraud.domain.Region;
 import antifraud.domain.TransactionValidationResult;
+import antifraud.id.IdSerializer;
+import antifraud.id.PluggableIdGenerator;
+import antifraud.ip.IpAddress;
+import antifraud.ip.IpAddressConverter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotEmpty;
@@ -18,19 +27,23 @@ import java.util.Objects;
 @RequiredArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "transactions")
-@SequenceGenerator(name = "transaction_sequence", sequenceName = "TransactionSequence")
+@Table(name = "transactions", indexes = @Index(name = "idx_transactions_number_date_ip_region", columnList = "number, date, ip, region"))
+@GenericGenerator(name = "transaction_sequence", strategy = PluggableIdGenerator.STRATEGY,
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "TransactionSequence"))
 public class Transaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_sequence")
+    @GeneratedValue(generator = "transaction_sequence")
     @JsonProperty(value = "transactionId")
+    @JsonSerialize(using = IdSerializer.class)
     private Long id;
 
     @NotNull
     private Long amount;
 
     @NotEmpty
+    @Convert(converter = IpAddressConverter.class)
+    @Column(columnDefinition = "binary(" + IpAddress.BYTES + ")")
     private String ip;
 
     @NotEmpty
@@ -47,6 +60,10 @@ public class Transaction {
     @Enumerated(EnumType.STRING)
     private TransactionValidationResult feedback;
 
+    @JsonIgnore
+    @Column(name = "journal_sequence")
+    private Long journalSequence;
+
     public Transaction(Long amount, String ip, String number, Region region, LocalDateTime date) {
         this.amount = amount;
         this.ip = ip;
@@ -1,8 +1,13 @@
 package antifraud.model;
 
 import antifraud.domain.UserRole;
+import antifraud.id.PluggableIdGenerator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotEmpty;
@@ -14,12 +19,13 @@ import java.util.Objects;
 @RequiredArgsConstructor
 @Entity
 @Table(name = "users")
-@SequenceGenerator(name = "sequence", sequenceName = "UserSeq")
+@GenericGenerator(name = "sequence", strategy = PluggableIdGenerator.STRATEGY,
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "UserSeq"))
 public class User {
 
     @Id
     @Column(name = "user_id")
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence")
+    @GeneratedValue(generator = "sequence")
     private Long id;
     @NotEmpty(message = "name must not be empty")
     private String name;
@@ -33,6 +39,11 @@ public class User {
 
     private boolean accountNonLocked;
 
+    // moves on whenever the access or the role changes, which turns down every bearer token issued before
+    @JsonIgnore
+    @Column(name = "token_version", columnDefinition = "bigint default 0")
+    private long tokenVersion = System.currentTimeMillis();
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -46,6 +57,11 @@ public class User {
         return getClass().hashCode();
     }
 
+    // never goes back, not even for a user deleted and created again under the same name
+    public void rotateTokenVersion() {
+        tokenVersion = Math.max(tokenVersion + 1, System.currentTimeMillis());
+    }
+
     public boolean isAdmin() {
         return UserRole.ROLE_ADMINISTRATOR.equals(role);
     }
@@ -0,0 +1,121 @@
+package antifraud.reactive;
+
+import antifraud.auth.AuthenticationThrottle;
+import antifraud.auth.BearerTokenAuthenticationFilter;
+import antifraud.auth.CachingBasicAuthenticationFilter;
+import antifraud.auth.CredentialCache;
+import antifraud.domain.UserRole;
+import antifraud.exception.AuthenticationThrottledException;
+import antifraud.exception.PasswordHashingRejectedException;
+import antifraud.service.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.authentication.ServerHttpBasicAuthenticationConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+
+// the same HTTP Basic and role rules SecurityConfig applies to these paths on the servlet side
+@Component
+@ConditionalOnProperty(name = "antifraud.reactive.enabled", havingValue = "true")
+public class ReactiveAuthorizationFilter {
+
+    // the request attribute the handlers find the caller's Authentication under
+    public static final String AUTHENTICATION_ATTRIBUTE = ReactiveAuthorizationFilter.class.getName() + ".authentication";
+
+    private final ServerHttpBasicAuthenticationConverter converter = new ServerHttpBasicAuthenticationConverter();
+    private final ReactiveAuthenticationManager authenticationManager;
+    private final ReactiveErrorResponses errors;
+    private final CredentialCache credentialCache;
+    private final AuthenticationThrottle throttle;
+    private final TokenService tokenService;
+
+    @Autowired
+    public ReactiveAuthorizationFilter(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+                                       ReactiveErrorResponses errors, CredentialCache credentialCache,
+                                       AuthenticationThrottle throttle, TokenService tokenService) {
+        // user lookups go through JPA, so they are kept off the event loop like the password check itself
+        UserDetailsRepositoryReactiveAuthenticationManager manager = new UserDetailsRepositoryReactiveAuthenticationManager(
+                username -> Mono.fromCallable(() -> userDetailsService.loadUserByUsername(username))
+                        .subscribeOn(Schedulers.boundedElastic()));
+        manager.setPasswordEncoder(passwordEncoder);
+        if (userDetailsService instanceof UserDetailsPasswordService) {
+            final UserDetailsPasswordService passwordService = (UserDetailsPasswordService) userDetailsService;
+            manager.setUserDetailsPasswordService((user, newPassword) -> Mono.fromCallable(() -> passwordService.updatePassword(user, newPassword))
+                    .subscribeOn(Schedulers.boundedElastic()));
+        }
+        this.authenticationManager = manager;
+        this.errors = errors;
+        this.credentialCache = credentialCache;
+        this.throttle = throttle;
+        this.tokenService = tokenService;
+    }
+
+    public HandlerFilterFunction<ServerResponse, ServerResponse> hasRole(UserRole role) {
+        return (request, next) -> authenticate(request.exchange())
+                .flatMap(authentication -> {
+                    if (authentication.getAuthorities().stream().noneMatch(authority -> authority.getAuthority().equals(role.name()))) {
+                        return errors.of(HttpStatus.FORBIDDEN, "Access Denied!", request);
+                    }
+                    request.attributes().put(AUTHENTICATION_ATTRIBUTE, authentication);
+                    return next.handle(request);
+                })
+                .switchIfEmpty(Mono.defer(() -> errors.of(HttpStatus.UNAUTHORIZED, "Full authentication is required to access this resource", request)))
+                .onErrorResume(AuthenticationThrottledException.class, e -> errors.of(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), request))
+                .onErrorResume(PasswordHashingRejectedException.class, e -> errors.of(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), request))
+                .onErrorResume(e -> e instanceof AuthenticationException && e.getCause() instanceof PasswordHashingRejectedException,
+                        e -> errors.of(HttpStatus.SERVICE_UNAVAILABLE, e.getCause().getMessage(), request))
+                .onErrorResume(AuthenticationException.class, e -> errors.of(HttpStatus.UNAUTHORIZED, e.getMessage(), request));
+    }
+
+    private Mono<Authentication> authenticate(ServerWebExchange exchange) {
+        final String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (BearerTokenAuthenticationFilter.isBearer(authorization)) {
+            return Mono.justOrEmpty(tokenService.verify(authorization.substring(BearerTokenAuthenticationFilter.PREFIX.length()).trim()))
+                    .map(BearerTokenAuthenticationFilter::authenticationOf)
+                    .switchIfEmpty(Mono.error(() -> new BadCredentialsException(BearerTokenAuthenticationFilter.INVALID_TOKEN)));
+        }
+
+        final Authentication cached = CachingBasicAuthenticationFilter.isBasic(authorization) ? credentialCache.get(authorization) : null;
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        final long generation = credentialCache.generation();
+        final String address = addressOf(exchange);
+        return converter.convert(exchange)
+                .flatMap(credentials -> {
+                    final long retryAfterMillis = throttle.retryAfterMillis(credentials.getName(), address);
+                    if (retryAfterMillis > 0) {
+                        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000));
+                        return Mono.error(new AuthenticationThrottledException(AuthenticationThrottle.THROTTLED_MESSAGE));
+                    }
+                    return authenticationManager.authenticate(credentials)
+                            .doOnError(BadCredentialsException.class, e -> throttle.failed(credentials.getName(), address));
+                })
+                .doOnNext(authentication -> {
+                    credentialCache.put(authorization, authentication, generation);
+                    throttle.succeeded(authentication.getName());
+                });
+    }
+
+    private static String addressOf(ServerWebExchange exchange) {
+        final InetSocketAddress remote = exchange.getRequest().getRemoteAddress();
+        return remote == null || remote.getAddress() == null ? null : remote.getAddress().getHostAddress();
+    }
+}
@@ -0,0 +1,49 @@
+package antifraud.reactive;
+
+import antifraud.domain.AntiFraudCustomErrorMessage;
+import antifraud.exception.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// mirrors the status mapping of AntiFraudExceptionHandler for the exceptions the reactive path can raise
+@Component
+@ConditionalOnProperty(name = "antifraud.reactive.enabled", havingValue = "true")
+public class ReactiveErrorResponses {
+
+    private static final Map<Class<? extends RuntimeException>, HttpStatus> STATUSES = Map.of(
+            InvalidRegionException.class, HttpStatus.BAD_REQUEST,
+            TransactionDateParsingException.class, HttpStatus.BAD_REQUEST,
+            InvalidNumberException.class, HttpStatus.BAD_REQUEST,
+            ServerWebInputException.class, HttpStatus.BAD_REQUEST,
+            TransactionNotFoundException.class, HttpStatus.NOT_FOUND,
+            RiskCheckTimeoutException.class, HttpStatus.SERVICE_UNAVAILABLE,
+            IdempotencyKeyReuseException.class, HttpStatus.UNPROCESSABLE_ENTITY);
+
+    public Mono<ServerResponse> of(Throwable e, ServerRequest request) {
+        final HttpStatus status = STATUSES.get(e.getClass());
+        if (status == null) {
+            return Mono.error(e);
+        }
+        return of(status, e instanceof ServerWebInputException ? ((ServerWebInputException) e).getReason() : e.getLocalizedMessage(), request);
+    }
+
+    public Mono<ServerResponse> of(HttpStatus status, String message, ServerRequest request) {
+        AntiFraudCustomErrorMessage body = AntiFraudCustomErrorMessage.builder()
+                .timestamp(LocalDateTime.now().toString())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .message(message)
+                .path(request.path())
+                .build();
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+}
@@ -0,0 +1,101 @@
+package antifraud.reactive;
+
+import antifraud.domain.TransactionDto;
+import antifraud.model.Transaction;
+import antifraud.rest.TransactionResponse;
+import antifraud.service.IdempotencyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.Optional;
+
+import static antifraud.domain.UserRole.ROLE_MERCHANT;
+import static antifraud.domain.UserRole.ROLE_SUPPORT;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+@Component
+@ConditionalOnProperty(name = "antifraud.reactive.enabled", havingValue = "true")
+public class ReactiveTransactionHandler {
+
+    private final ReactiveTransactionService transactionService;
+    private final IdempotencyService idempotencyService;
+    private final ReactiveAuthorizationFilter authorization;
+    private final ReactiveErrorResponses errors;
+    private final Validator validator;
+
+    @Autowired
+    public ReactiveTransactionHandler(ReactiveTransactionService transactionService,
+                                      IdempotencyService idempotencyService,
+                                      ReactiveAuthorizationFilter authorization,
+                                      ReactiveErrorResponses errors,
+                                      Validator validator) {
+        this.transactionService = transactionService;
+        this.idempotencyService = idempotencyService;
+        this.authorization = authorization;
+        this.errors = errors;
+        this.validator = validator;
+    }
+
+    public RouterFunction<ServerResponse> routes() {
+        return route(POST("/api/antifraud/transaction"), this::process)
+                .filter(authorization.hasRole(ROLE_MERCHANT))
+                .and(route(GET("/api/antifraud/history"), this::getHistory)
+                        .andRoute(GET("/api/antifraud/history/{number}"), this::findByNumber)
+                        .filter(authorization.hasRole(ROLE_SUPPORT)));
+    }
+
+    public Mono<ServerResponse> process(ServerRequest request) {
+        return request.bodyToMono(TransactionDto.class)
+                .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Request body is missing")))
+                .flatMap(dto -> {
+                    final String key = request.headers().firstHeader(IdempotencyService.IDEMPOTENCY_KEY_HEADER);
+                    var violation = validator.validate(dto).stream().findFirst().map(ConstraintViolation::getMessage);
+                    if (violation.isEmpty() && key != null && key.length() > IdempotencyService.MAX_IDEMPOTENCY_KEY_LENGTH) {
+                        violation = Optional.of(IdempotencyService.IDEMPOTENCY_KEY_TOO_LONG);
+                    }
+                    return violation.isPresent()
+                            ? errors.of(HttpStatus.BAD_REQUEST, violation.get(), request)
+                            : validate(dto, key, request)
+                            .flatMap(response -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(response));
+                })
+                .onErrorResume(e -> errors.of(e, request));
+    }
+
+    // the idempotency records are kept through JPA, so a keyed request waits for its scoring on a worker thread. the
+    // record is stored once the scored transaction has committed, rather than with it as on the servlet side
+    private Mono<TransactionResponse> validate(TransactionDto dto, String key, ServerRequest request) {
+        if (key == null) {
+            return transactionService.validate(dto);
+        }
+
+        final String owner = request.attribute(ReactiveAuthorizationFilter.AUTHENTICATION_ATTRIBUTE)
+                .map(authentication -> ((Authentication) authentication).getName())
+                .orElseThrow();
+        return Mono.fromCallable(() -> idempotencyService.execute(owner, key, dto, () -> transactionService.validate(dto).block()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<ServerResponse> getHistory(ServerRequest request) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).body(transactionService.findAll(), Transaction.class);
+    }
+
+    public Mono<ServerResponse> findByNumber(ServerRequest request) {
+        return transactionService.findAllByNumber(request.pathVariable("number"))
+                .flatMap(transactions -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(transactions))
+                .onErrorResume(e -> errors.of(e, request));
+    }
+}
@@ -0,0 +1,73 @@
+package antifraud.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+// serves the transaction scoring and history endpoints from a few event-loop threads next to the servlet container
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "antifraud.reactive.enabled", havingValue = "true")
+public class ReactiveTransactionServer {
+
+    private final ReactiveTransactionHandler handler;
+    private final ObjectMapper objectMapper;
+    private final int port;
+    private final int eventLoopThreads;
+
+    private LoopResources loops;
+    private DisposableServer server;
+
+    @Autowired
+    public ReactiveTransactionServer(ReactiveTransactionHandler handler,
+                                     ObjectMapper objectMapper,
+                                     @Value("${antifraud.reactive.port}") int port,
+                                     @Value("${antifraud.reactive.event-loop-threads}") int eventLoopThreads) {
+        this.handler = handler;
+        this.objectMapper = objectMapper;
+        this.port = port;
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    @PostConstruct
+    public void start() {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+
+        loops = LoopResources.create("antifraud-reactive", eventLoopThreads, true);
+        server = HttpServer.create()
+                .port(port)
+                .tcpConfiguration(tcp -> tcp.runOn(loops))
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(handler.routes(), strategies)))
+                .bindNow();
+        log.info("Reactive transaction endpoints listening on port {}", server.port());
+    }
+
+    public int port() {
+        return server.port();
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.disposeNow();
+        loops.dispose();
+    }
+}
@@ -0,0 +1,18 @@
+package antifraud.reactive;
+
+import antifraud.domain.TransactionDto;
+import antifraud.model.Transaction;
+import antifraud.rest.TransactionResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ReactiveTransactionService {
+
+    Mono<TransactionResponse> validate(TransactionDto transaction);
+
+    Flux<Transaction> findAll();
+
+    Mono<List<Transaction>> findAllByNumber(String number);
+}
@@ -0,0 +1,284 @@
+package antifraud.reactive;
+
+import antifraud.domain.Region;
+import antifraud.domain.TransactionCorrelation;
+import antifraud.domain.TransactionDto;
+import antifraud.domain.TransactionValidationResult;
+import antifraud.exception.InvalidNumberException;
+import antifraud.exception.RiskCheckTimeoutException;
+import antifraud.exception.TransactionNotFoundException;
+import antifraud.id.PluggableIdGenerator;
+import antifraud.id.TimeOrderedIds;
+import antifraud.index.BlacklistIndex;
+import antifraud.index.TransactionWindowIndex;
+import antifraud.ip.IpAddress;
+import antifraud.journal.TransactionWriter;
+import antifraud.model.Card;
+import antifraud.model.Transaction;
+import antifraud.rest.TransactionResponse;
+import antifraud.service.TransactionDecisionTable;
+import antifraud.util.AntiFraudUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static antifraud.domain.TransactionValidationResult.*;
+
+@Service
+@ConditionalOnProperty(name = "antifraud.reactive.enabled", havingValue = "true")
+public class ReactiveTransactionServiceImpl implements ReactiveTransactionService {
+
+    private final ConnectionFactory connectionFactory;
+    private final DatabaseClient client;
+    private final TransactionWindowIndex windowIndex;
+    private final BlacklistIndex blacklistIndex;
+    private final TransactionWriter transactionWriter;
+    private final MeterRegistry meterRegistry;
+    private final Duration timeout;
+    private final Supplier<Mono<Long>> transactionIds;
+
+    @Autowired
+    public ReactiveTransactionServiceImpl(TransactionWindowIndex windowIndex,
+                                          BlacklistIndex blacklistIndex,
+                                          TransactionWriter transactionWriter,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${antifraud.reactive.r2dbc-url}") String url,
+                                          @Value("${spring.datasource.username}") String username,
+                                          @Value("${spring.datasource.password}") String password,
+                                          @Value("${antifraud.reactive.risk-check-timeout-ms}") long timeoutMillis,
+                                          @Value("${spring.jpa.properties.antifraud.id.generator:sequence}") String idGenerator,
+                                          @Value("${spring.jpa.properties.antifraud.id.node-id:0}") int nodeId) {
+        // deliberately not a bean: a ConnectionFactory in the context switches off the JPA DataSource
+        this.connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+        this.client = DatabaseClient.create(connectionFactory);
+        this.windowIndex = windowIndex;
+        this.blacklistIndex = blacklistIndex;
+        this.transactionWriter = transactionWriter;
+        this.meterRegistry = meterRegistry;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        if (PluggableIdGenerator.TIME_ORDERED.equals(idGenerator)) {
+            TimeOrderedIds ids = TimeOrderedIds.forNode(nodeId);
+            this.transactionIds = () -> Mono.fromSupplier(ids::next);
+        } else {
+            this.transactionIds = new PooledSequence("transaction_sequence")::next;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (connectionFactory instanceof Disposable) {
+            ((Disposable) connectionFactory).dispose();
+        }
+    }
+
+    @Override
+    public Mono<TransactionResponse> validate(TransactionDto dto) {
+        return Mono.fromCallable(() -> toTransaction(dto)).flatMap(transaction -> Mono.zip(
+                        check("amount", processAmount(transaction)),
+                        check("correlation", correlate(transaction)),
+                        check("ip", isBlacklistedIp(transaction.getIp())),
+                        check("card-number", isBlacklistedCardNumber(transaction.getNumber())))
+                .flatMap(checks -> {
+                    int signals = TransactionDecisionTable.signalsOf(checks.getT2(), checks.getT3(), checks.getT4());
+                    var decision = TransactionDecisionTable.decide(checks.getT1(), signals);
+                    transaction.setResult(decision.getResult());
+
+                    return save(transaction)
+                            .doOnSuccess(windowIndex::record)
+                            .thenReturn(new TransactionResponse(decision.getResult(), decision.getInfo()));
+                }));
+    }
+
+    @Override
+    public Flux<Transaction> findAll() {
+        return flushed().thenMany(client.execute("SELECT * FROM transactions ORDER BY id")
+                .map((row, metadata) -> toTransaction(row))
+                .all());
+    }
+
+    @Override
+    public Mono<List<Transaction>> findAllByNumber(String number) {
+        if (AntiFraudUtil.isValidNumber().negate().test(number)) {
+            return Mono.error(new InvalidNumberException("card number validation failed"));
+        }
+
+        return flushed().thenMany(client.execute("SELECT * FROM transactions WHERE number = :number ORDER BY id")
+                        .bind("number", number)
+                        .map((row, metadata) -> toTransaction(row))
+                        .all())
+                .collectList()
+                .filter(transactions -> !transactions.isEmpty())
+                .switchIfEmpty(Mono.error(() -> new TransactionNotFoundException(
+                        String.format("No transaction for number = %s found", number))));
+    }
+
+    private Transaction toTransaction(TransactionDto dto) {
+        return new Transaction(dto.getAmount(), AntiFraudUtil.normalizeIp(dto.getIp()), dto.getNumber(),
+                Region.toRegion(dto.getRegion()), dto.getDate());
+    }
+
+    private Transaction toTransaction(Row row) {
+        Transaction transaction = new Transaction(row.get("amount", Long.class),
+                IpAddress.fromBytes(row.get("ip", byte[].class)).toString(), row.get("number", String.class),
+                Region.valueOf(row.get("region", String.class)), row.get("date", LocalDateTime.class));
+        transaction.setId(row.get("id", Long.class));
+        transaction.setResult(TransactionValidationResult.valueOf(row.get("result", String.class)));
+
+        String feedback = row.get("feedback", String.class);
+        transaction.setFeedback(feedback == null ? null : TransactionValidationResult.valueOf(feedback));
+        return transaction;
+    }
+
+    private <T> Mono<T> check(String name, Mono<T> check) {
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            return check.doFinally(signal -> meterRegistry.timer("antifraud.risk.checks", "check", name)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }).timeout(timeout, Mono.error(() -> new RiskCheckTimeoutException("Risk check timed out")));
+    }
+
+    private Mono<TransactionValidationResult> processAmount(Transaction transaction) {
+        final long amount = transaction.getAmount();
+
+        return findCardLimits(transaction.getNumber()).map(limits -> {
+            if (amount <= limits.getT1()) {
+                return ALLOWED;
+            } else if (amount <= limits.getT2()) {
+                return MANUAL_PROCESSING;
+            } else {
+                return PROHIBITED;
+            }
+        });
+    }
+
+    // cards without a row still have the default limits
+    private Mono<Tuple2<Long, Long>> findCardLimits(String number) {
+        return client.execute("SELECT max_allowed, max_manual FROM card WHERE number = :number")
+                .bind("number", number)
+                .map((row, metadata) -> Tuples.of(row.get("max_allowed", Long.class), row.get("max_manual", Long.class)))
+                .one()
+                .defaultIfEmpty(Tuples.of(Card.MAX_ALLOWED, Card.MAX_MANUAL));
+    }
+
+    private Mono<TransactionCorrelation> correlate(Transaction transaction) {
+        final String ip = transaction.getIp();
+        final String number = transaction.getNumber();
+        final Region region = transaction.getRegion();
+        final LocalDateTime date = transaction.getDate();
+
+        return Mono.justOrEmpty(windowIndex.correlate(number, ip, region, date)).switchIfEmpty(flushed().then(Mono.defer(() ->
+                client.execute("SELECT COUNT(DISTINCT CASE WHEN region <> :region THEN region END) AS regions, "
+                                + "COUNT(DISTINCT CASE WHEN ip <> :ip THEN ip END) AS ips "
+                                + "FROM transactions WHERE number = :number AND date BETWEEN :start AND :end")
+                        .bind("region", region.name())
+                        .bind("ip", IpAddress.parse(ip).toBytes())
+                        .bind("number", number)
+                        .bind("start", date.minus(TransactionWindowIndex.WINDOW))
+                        .bind("end", date)
+                        .map((row, metadata) -> new TransactionCorrelation(row.get("regions", Long.class), row.get("ips", Long.class)))
+                        .one())));
+    }
+
+    // transactions scored on the servlet side may still wait in the write-behind journal; the wait blocks, so not on the event loop
+    private Mono<Void> flushed() {
+        return Mono.<Void>fromRunnable(transactionWriter::flush).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Boolean> isBlacklistedIp(String ip) {
+        return Mono.fromSupplier(() -> blacklistIndex.isSuspicious(ip));
+    }
+
+    private Mono<Boolean> isBlacklistedCardNumber(String number) {
+        return Mono.fromSupplier(() -> blacklistIndex.isStolen(number));
+    }
+
+    private Mono<Transaction> save(Transaction transaction) {
+        return transactionIds.get().flatMap(id -> {
+            transaction.setId(id);
+            return client.execute("INSERT INTO transactions (id, amount, ip, number, region, date, result) "
+                            + "VALUES (:id, :amount, :ip, :number, :region, :date, :result)")
+                    .bind("id", id)
+                    .bind("amount", transaction.getAmount())
+                    .bind("ip", IpAddress.parse(transaction.getIp()).toBytes())
+                    .bind("number", transaction.getNumber())
+                    .bind("region", transaction.getRegion().name())
+                    .bind("date", transaction.getDate())
+                    .bind("result", transaction.getResult().name())
+                    .fetch()
+                    .rowsUpdated()
+                    .thenReturn(transaction);
+        });
+    }
+
+    // hands out ids the same way Hibernate's pooled optimizer does, so both paths can share a sequence:
+    // every value read from the database reserves the block of PluggableIdGenerator.DEFAULT_INCREMENT_SIZE ids ending at it
+    private final class PooledSequence {
+
+        private final String sql;
+        private final AtomicReference<Block> block = new AtomicReference<>(new Block(1L, 0L));
+
+        PooledSequence(String sequence) {
+            this.sql = "SELECT NEXT VALUE FOR " + sequence;
+        }
+
+        Mono<Long> next() {
+            return Mono.defer(() -> {
+                final long id = block.get().take();
+                if (id > 0) {
+                    return Mono.just(id);
+                }
+
+                return client.execute(sql)
+                        .map((row, metadata) -> row.get(0, Long.class))
+                        .one()
+                        .map(hi -> {
+                            Block fetched = new Block(Math.max(1L, hi - PluggableIdGenerator.DEFAULT_INCREMENT_SIZE + 1), hi);
+                            final long first = fetched.take();
+                            block.set(fetched);
+                            return first;
+                        });
+            });
+        }
+    }
+
+    private static final class Block {
+
+        private final AtomicLong next;
+        private final long last;
+
+        Block(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+
+        long take() {
+            final long id = next.getAndIncrement();
+            return id <= last ? id : -1L;
+        }
+    }
+}
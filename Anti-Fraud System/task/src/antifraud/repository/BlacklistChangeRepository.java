@@ -0,0 +1,12 @@
+package antifraud.repository;
+
+import antifraud.model.BlacklistChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface BlacklistChangeRepository extends CrudRepository<BlacklistChange, Long> {
+
+    List<BlacklistChange> findAllByVersionGreaterThanOrderByVersion(Long version, Pageable pageable);
+}
@@ -0,0 +1,19 @@
+package antifraud.repository;
+
+import antifraud.model.BlacklistVersion;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface BlacklistVersionRepository extends CrudRepository<BlacklistVersion, Integer> {
+
+    @Modifying
+    @Query("UPDATE BlacklistVersion v SET v.version = v.version + :count WHERE v.id = " + BlacklistVersion.ID)
+    int increment(@Param("count") long count);
+
+    @Query("SELECT v.version FROM BlacklistVersion v WHERE v.id = " + BlacklistVersion.ID)
+    Optional<Long> findCurrent();
+}
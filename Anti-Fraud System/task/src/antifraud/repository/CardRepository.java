@@ -1,10 +1,22 @@
 package antifraud.repository;
 
 import antifraud.model.Card;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface CardRepository extends CrudRepository<Card, Long> {
     Optional<Card> findByNumber(String cardNumber);
+    List<Card> findAllByNumberIn(Collection<String> cardNumbers);
+
+    // the row stays locked until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Card c WHERE c.number = :number")
+    Optional<Card> findForUpdateByNumber(@Param("number") String cardNumber);
 }
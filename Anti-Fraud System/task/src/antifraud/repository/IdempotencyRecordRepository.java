@@ -0,0 +1,20 @@
+package antifraud.repository;
+
+import antifraud.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyRecordRepository extends CrudRepository<IdempotencyRecord, String> {
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.created < :created")
+    int deleteAllByCreatedBefore(@Param("created") LocalDateTime created);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.key = :key AND r.created < :created")
+    int deleteByKeyAndCreatedBefore(@Param("key") String key, @Param("created") LocalDateTime created);
+}
@@ -1,14 +1,17 @@
 package antifraud.repository;
 
+import antifraud.domain.BlacklistEntry;
 import antifraud.model.StolenCard;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
-import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface StolenCardRepository extends CrudRepository<StolenCard, Long> {
 
     Optional<StolenCard> findByNumber(String number);
 
-    List<StolenCard> findAll();
+    @Query("SELECT new antifraud.domain.BlacklistEntry(s.number, s.expiresAt) FROM StolenCard s")
+    Stream<BlacklistEntry> streamAllEntries();
 }
@@ -1,13 +1,17 @@
 package antifraud.repository;
 
+import antifraud.domain.BlacklistEntry;
 import antifraud.model.Address;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
-import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface SuspiciousIpRepository extends CrudRepository<Address, Long> {
 
     Optional<Address> findByIp(String ip);
-    List<Address> findAll();
+
+    @Query("SELECT new antifraud.domain.BlacklistEntry(a.ip, a.expiresAt) FROM Address a")
+    Stream<BlacklistEntry> streamAllEntries();
 }
@@ -1,16 +1,36 @@
 package antifraud.repository;
 
 import antifraud.domain.Region;
+import antifraud.domain.TransactionCorrelation;
 import antifraud.model.Transaction;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface TransactionRepository extends CrudRepository<Transaction, Long> {
 
-    List<Transaction> findAlLByNumberAndDateBetweenAndRegionNot(String number, LocalDateTime start, LocalDateTime end, Region region);
-    List<Transaction> findAllByNumberAndDateIsBetweenAndIpNot(String number, LocalDateTime start, LocalDateTime end, String ip);
     List<Transaction> findAll();
-    List<Transaction> findAllByNumber(String number);
+    List<Transaction> findAllByNumberOrderById(String number);
+    List<Transaction> findAllByDateGreaterThanEqual(LocalDateTime date);
+    List<Transaction> findAllByNumberInAndDateBetween(Collection<String> numbers, LocalDateTime start, LocalDateTime end);
+    Optional<Transaction> findTopByOrderByDateDesc();
+    Optional<Transaction> findTopByJournalSequenceNotNullOrderByJournalSequenceDesc();
+
+    @Modifying
+    @Query("DELETE FROM Transaction t WHERE t.journalSequence IN :sequences")
+    int deleteAllByJournalSequenceIn(@Param("sequences") Collection<Long> sequences);
+
+    // answered from the (number, date, ip, region) index alone, without loading any transaction
+    @Query("SELECT new antifraud.domain.TransactionCorrelation("
+            + "COUNT(DISTINCT CASE WHEN t.region <> :region THEN t.region END), "
+            + "COUNT(DISTINCT CASE WHEN t.ip <> :ip THEN t.ip END)) "
+            + "FROM Transaction t WHERE t.number = :number AND t.date BETWEEN :start AND :end")
+    TransactionCorrelation countCorrelations(@Param("number") String number, @Param("ip") String ip, @Param("region") Region region,
+                                             @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 }
@@ -1,7 +1,11 @@
 package antifraud.repository;
 
+import antifraud.domain.UserVersion;
 import antifraud.model.User;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,4 +14,13 @@ public interface UserRepository extends CrudRepository<User, Long> {
 
     Optional<User> findUsersByUsernameIgnoreCase(String name);
     List<User> findAll();
+
+    @Query("SELECT new antifraud.domain.UserVersion(u.username, u.tokenVersion) FROM User u")
+    List<UserVersion> findAllVersions();
+
+    // replaces only the hash the new one was computed from, so a password changed in the meantime stays
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.username = :username AND u.password = :oldPassword")
+    int updatePassword(@Param("username") String username, @Param("oldPassword") String oldPassword,
+                       @Param("password") String password);
 }
@@ -0,0 +1,21 @@
+package antifraud.rest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class BulkImportResponse {
+
+    private long imported;
+    private long duplicates;
+    private long rejected;
+    // the first few rejected lines, as "line N: reason"
+    private List<String> errors;
+}
@@ -0,0 +1,20 @@
+package antifraud.rest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class TokenResponse {
+
+    public static final String BEARER = "Bearer";
+
+    private String token;
+    private String type;
+    // seconds
+    private long expiresIn;
+}
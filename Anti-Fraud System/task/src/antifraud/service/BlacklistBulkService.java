@@ -0,0 +1,19 @@
+package antifraud.service;
+
+import antifraud.domain.BlacklistFormat;
+import antifraud.rest.BulkImportResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface BlacklistBulkService {
+
+    BulkImportResponse importStolenCards(InputStream numbers, BlacklistFormat format) throws IOException;
+
+    BulkImportResponse importSuspiciousIps(InputStream ips, BlacklistFormat format) throws IOException;
+
+    void exportStolenCards(OutputStream numbers, BlacklistFormat format) throws IOException;
+
+    void exportSuspiciousIps(OutputStream ips, BlacklistFormat format) throws IOException;
+}
@@ -0,0 +1,464 @@
+package antifraud.service;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistEntry;
+import antifraud.domain.BlacklistFormat;
+import antifraud.index.BlacklistIndex;
+import antifraud.ip.IpRangeConverter;
+import antifraud.model.Address;
+import antifraud.model.StolenCard;
+import antifraud.rest.BulkImportResponse;
+import antifraud.util.AntiFraudUtil;
+import antifraud.util.BoundedLineReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import static antifraud.domain.BlacklistAction.ADD;
+import static antifraud.domain.BlacklistAction.REMOVE;
+
+@Service
+public class BlacklistBulkServiceImpl implements BlacklistBulkService {
+
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final byte NEW_LINE = '\n';
+    private static final String EXPIRES_AT_COLUMN = "expires_at";
+    private static final String EXPIRES_AT_PROPERTY = "expiresAt";
+
+    private static final Target STOLEN_CARDS = new Target(Blacklist.STOLEN_CARD, StolenCard.class, "stolen_card",
+            "stolen_card_id", "number", AntiFraudUtil.isValidNumber(), UnaryOperator.identity(),
+            "Invalid card number in request!", StolenCard::new, null);
+    private static final Target SUSPICIOUS_IPS = new Target(Blacklist.SUSPICIOUS_IP, Address.class, "addresses",
+            "address_id", "ip", AntiFraudUtil.isValidIpRange(), AntiFraudUtil::normalizeIpRange,
+            "ip address is not valid", Address::new, new IpRangeConverter());
+
+    private final BlacklistChangeService blacklistChangeService;
+    private final BlacklistIndex blacklistIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader lineReader;
+    private final ObjectWriter arrayWriter;
+    private final ObjectWriter lineWriter;
+    private final int batchSize;
+    private final int maxLineLength;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public BlacklistBulkServiceImpl(BlacklistChangeService blacklistChangeService,
+                                    BlacklistIndex blacklistIndex,
+                                    JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    ObjectMapper objectMapper,
+                                    @Value("${antifraud.bulk.batch-size}") int batchSize,
+                                    @Value("${antifraud.bulk.max-line-length}") int maxLineLength) {
+        this.blacklistChangeService = blacklistChangeService;
+        this.blacklistIndex = blacklistIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.lineReader = objectMapper.readerFor(JsonNode.class);
+        this.arrayWriter = objectMapper.writer();
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.batchSize = batchSize;
+        this.maxLineLength = maxLineLength;
+    }
+
+    @Override
+    public BulkImportResponse importStolenCards(InputStream numbers, BlacklistFormat format) throws IOException {
+        return importAll(STOLEN_CARDS, numbers, format);
+    }
+
+    @Override
+    public BulkImportResponse importSuspiciousIps(InputStream ips, BlacklistFormat format) throws IOException {
+        return importAll(SUSPICIOUS_IPS, ips, format);
+    }
+
+    @Override
+    public void exportStolenCards(OutputStream numbers, BlacklistFormat format) throws IOException {
+        exportAll(STOLEN_CARDS, numbers, format);
+    }
+
+    @Override
+    public void exportSuspiciousIps(OutputStream ips, BlacklistFormat format) throws IOException {
+        exportAll(SUSPICIOUS_IPS, ips, format);
+    }
+
+    // validated line by line and written one chunk per transaction, so neither the file nor the whole import is ever held
+    private BulkImportResponse importAll(Target target, InputStream input, BlacklistFormat format) throws IOException {
+        BoundedLineReader reader = new BoundedLineReader(new InputStreamReader(input, StandardCharsets.UTF_8), maxLineLength);
+        ImportRun run = new ImportRun();
+        List<BlacklistEntry> chunk = new ArrayList<>(batchSize);
+        // CSV fields holding the value and the expiry; a header line may place them, as in an export
+        int valueField = 0;
+        int expiryField = -1;
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (reader.isTruncated()) {
+                run.reject(lineNumber, "Line is longer than " + maxLineLength + " characters");
+                continue;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+
+            if (format == BlacklistFormat.CSV && lineNumber == 1) {
+                final List<String> header = fieldsOf(line);
+                if (header.contains(target.column)) {
+                    valueField = header.indexOf(target.column);
+                    expiryField = header.indexOf(EXPIRES_AT_COLUMN);
+                    continue;
+                }
+            }
+
+            final BlacklistEntry entry = format == BlacklistFormat.CSV
+                    ? csvEntryOf(fieldsOf(line), valueField, expiryField)
+                    : jsonEntryOf(target, line);
+            if (entry == null || !target.isValid(entry.getValue())) {
+                run.reject(lineNumber, entry == null ? "Malformed line" : target.invalidMessage);
+                continue;
+            }
+            if (entry.getExpiresAt() != null && !entry.getExpiresAt().isAfter(LocalDateTime.now())) {
+                run.reject(lineNumber, "Expiry must be in the future");
+                continue;
+            }
+
+            entry.setValue(target.normalizer.apply(entry.getValue()));
+            chunk.add(entry);
+            if (chunk.size() == batchSize) {
+                insertChunk(target, chunk, run);
+            }
+        }
+        insertChunk(target, chunk, run);
+
+        return BulkImportResponse.builder()
+                .imported(run.imported)
+                .duplicates(run.duplicates)
+                .rejected(run.rejected)
+                .errors(run.errors)
+                .build();
+    }
+
+    // null when the line has no value field or an expiry that does not parse; an empty expiry never expires
+    private static BlacklistEntry csvEntryOf(List<String> fields, int valueField, int expiryField) {
+        if (valueField >= fields.size()) {
+            return null;
+        }
+
+        final String expiry = expiryField >= 0 && expiryField < fields.size() ? fields.get(expiryField) : "";
+        try {
+            return new BlacklistEntry(fields.get(valueField), expiry.isEmpty() ? null : LocalDateTime.parse(expiry));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private BlacklistEntry jsonEntryOf(Target target, String line) {
+        try {
+            final JsonNode node = lineReader.readValue(line);
+            final JsonNode value = node.get(target.column);
+            final JsonNode expiry = node.get(EXPIRES_AT_PROPERTY);
+            if (value == null || !value.isTextual() || expiry != null && !expiry.isNull() && !expiry.isTextual()) {
+                return null;
+            }
+            return new BlacklistEntry(value.asText(), expiry == null || expiry.isNull() ? null : LocalDateTime.parse(expiry.asText()));
+        } catch (JsonProcessingException | DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static List<String> fieldsOf(String line) {
+        List<String> fields = new ArrayList<>();
+        for (String field : line.split(",", -1)) {
+            field = field.trim();
+            fields.add(field.length() > 1 && field.startsWith("\"") && field.endsWith("\"") ? field.substring(1, field.length() - 1) : field);
+        }
+        return fields;
+    }
+
+    // no lookup first: expired rows still waiting for the purge are renewed, like a single add renews them,
+    // the unique constraint rejects the rest of what is already stored, and only the rows that changed are logged
+    private void insertChunk(Target target, List<BlacklistEntry> entries, ImportRun run) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        final Integer added = transactionTemplate.execute(status -> {
+            final Timestamp now = new Timestamp(System.currentTimeMillis());
+            final int[] renewedCounts = jdbcTemplate.batchUpdate(target.renewSql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement statement, int i) throws SQLException {
+                    statement.setTimestamp(1, timestampOf(entries.get(i).getExpiresAt()));
+                    target.bind(statement, 2, entries.get(i).getValue());
+                    statement.setTimestamp(3, now);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return entries.size();
+                }
+            });
+
+            List<BlacklistEntry> renewed = new ArrayList<>();
+            List<BlacklistEntry> absent = new ArrayList<>();
+            for (int i = 0; i < renewedCounts.length; i++) {
+                (changed(renewedCounts[i]) ? renewed : absent).add(entries.get(i));
+            }
+
+            SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+            IdentifierGenerator generator = session.getFactory().getMetamodel()
+                    .entityPersister(target.entity).getIdentifierGenerator();
+
+            final long[] ids = new long[absent.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (Long) generator.generate(session, null);
+            }
+
+            final int[] counts = ids.length == 0 ? new int[0]
+                    : jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> insertBatch(connection.prepareStatement(target.insertSql), target, ids, absent));
+
+            renewed.addAll(succeeded(absent, counts));
+            blacklistChangeService.recordAll(target.list, ADD, renewed);
+            return renewed.size();
+        });
+
+        run.imported += added;
+        run.duplicates += entries.size() - added;
+        entries.clear();
+    }
+
+    // every node turns up the same expired entries; the delete re-checks the expiry, so a renewed row stays,
+    // and only the rows deleted here are logged
+    @Scheduled(fixedDelayString = "${antifraud.blacklist.expiry-interval-ms}")
+    public void purgeExpired() {
+        final long now = System.currentTimeMillis();
+        purgeExpired(STOLEN_CARDS, blacklistIndex.expired(Blacklist.STOLEN_CARD, now), new Timestamp(now));
+        purgeExpired(SUSPICIOUS_IPS, blacklistIndex.expired(Blacklist.SUSPICIOUS_IP, now), new Timestamp(now));
+    }
+
+    private void purgeExpired(Target target, List<String> expired, Timestamp now) {
+        for (int from = 0; from < expired.size(); from += batchSize) {
+            final List<String> values = expired.subList(from, Math.min(from + batchSize, expired.size()));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                final int[] counts = jdbcTemplate.batchUpdate(target.deleteSql, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        target.bind(statement, 1, values.get(i));
+                        statement.setTimestamp(2, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return values.size();
+                    }
+                });
+                List<BlacklistEntry> removed = new ArrayList<>();
+                for (String value : succeeded(values, counts)) {
+                    removed.add(new BlacklistEntry(value, null));
+                }
+                blacklistChangeService.recordAll(target.list, REMOVE, removed);
+            });
+        }
+    }
+
+    private static <T> List<T> succeeded(List<T> values, int[] counts) {
+        List<T> succeeded = new ArrayList<>(values.size());
+        for (int i = 0; i < counts.length; i++) {
+            if (changed(counts[i])) {
+                succeeded.add(values.get(i));
+            }
+        }
+        return succeeded;
+    }
+
+    private static boolean changed(int count) {
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+
+    private static Timestamp timestampOf(LocalDateTime dateTime) {
+        return dateTime == null ? null : Timestamp.valueOf(dateTime);
+    }
+
+    private static int[] insertBatch(PreparedStatement statement, Target target, long[] ids, List<BlacklistEntry> entries) throws SQLException {
+        try (statement) {
+            for (int i = 0; i < ids.length; i++) {
+                statement.setLong(1, ids[i]);
+                target.bind(statement, 2, entries.get(i).getValue());
+                statement.setTimestamp(3, timestampOf(entries.get(i).getExpiresAt()));
+                statement.addBatch();
+            }
+
+            try {
+                return statement.executeBatch();
+            } catch (BatchUpdateException e) {
+                for (SQLException next = e; next != null; next = next.getNextException()) {
+                    if (!UNIQUE_VIOLATION.equals(next.getSQLState())) {
+                        throw e;
+                    }
+                }
+                return e.getUpdateCounts();
+            }
+        }
+    }
+
+    // rows go straight from the result set to the response, without entities piling up in a persistence context
+    private void exportAll(Target target, OutputStream output, BlacklistFormat format) throws IOException {
+        final OutputStream out = new BufferedOutputStream(output);
+        final SequenceWriter array = format == BlacklistFormat.JSON ? arrayWriter.writeValuesAsArray(out) : null;
+
+        if (format == BlacklistFormat.CSV) {
+            out.write((target.idColumn + ',' + target.column + ",expires_at\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(target.selectSql);
+                statement.setTimestamp(1, now);
+                statement.setFetchSize(batchSize);
+                return statement;
+            }, (RowCallbackHandler) row -> {
+                try {
+                    final long id = row.getLong(1);
+                    final String value = target.read(row, 2);
+                    final Timestamp expiry = row.getTimestamp(3);
+                    final LocalDateTime expiresAt = expiry == null ? null : expiry.toLocalDateTime();
+                    if (format == BlacklistFormat.CSV) {
+                        out.write((id + "," + value + ',' + (expiresAt == null ? "" : expiresAt.toString()) + '\n')
+                                .getBytes(StandardCharsets.UTF_8));
+                    } else if (format == BlacklistFormat.NDJSON) {
+                        out.write(lineWriter.writeValueAsBytes(target.entityOf.create(id, value, expiresAt)));
+                        out.write(NEW_LINE);
+                    } else {
+                        array.write(target.entityOf.create(id, value, expiresAt));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (array != null) {
+            array.close();
+        }
+        out.flush();
+    }
+
+    private static final class Target {
+
+        private final Blacklist list;
+        private final Class<?> entity;
+        private final String idColumn;
+        private final String column;
+        private final String insertSql;
+        private final String renewSql;
+        private final String selectSql;
+        private final String deleteSql;
+        private final Predicate<String> validator;
+        private final UnaryOperator<String> normalizer;
+        private final String invalidMessage;
+        private final EntityFactory entityOf;
+        // null when the column holds the value as it is written
+        private final AttributeConverter<String, byte[]> converter;
+
+        private Target(Blacklist list, Class<?> entity, String table, String idColumn, String column,
+                       Predicate<String> validator, UnaryOperator<String> normalizer, String invalidMessage,
+                       EntityFactory entityOf, AttributeConverter<String, byte[]> converter) {
+            this.list = list;
+            this.entity = entity;
+            this.idColumn = idColumn;
+            this.column = column;
+            this.insertSql = "INSERT INTO " + table + " (" + idColumn + ", " + column + ", expires_at) VALUES (?, ?, ?)";
+            this.renewSql = "UPDATE " + table + " SET expires_at = ? WHERE " + column + " = ? AND expires_at <= ?";
+            this.selectSql = "SELECT " + idColumn + ", " + column + ", expires_at FROM " + table
+                    + " WHERE expires_at IS NULL OR expires_at > ? ORDER BY " + idColumn;
+            this.deleteSql = "DELETE FROM " + table + " WHERE " + column + " = ? AND expires_at <= ?";
+            this.validator = validator;
+            this.normalizer = normalizer;
+            this.invalidMessage = invalidMessage;
+            this.entityOf = entityOf;
+            this.converter = converter;
+        }
+
+        void bind(PreparedStatement statement, int index, String value) throws SQLException {
+            if (converter == null) {
+                statement.setString(index, value);
+            } else {
+                statement.setBytes(index, converter.convertToDatabaseColumn(value));
+            }
+        }
+
+        String read(ResultSet row, int index) throws SQLException {
+            return converter == null ? row.getString(index) : converter.convertToEntityAttribute(row.getBytes(index));
+        }
+
+        // the validators expect well-formed input, so anything they choke on is simply invalid
+        boolean isValid(String value) {
+            try {
+                return !value.isEmpty() && validator.test(value);
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+    private interface EntityFactory {
+
+        Object create(Long id, String value, LocalDateTime expiresAt);
+    }
+
+    private static final class ImportRun {
+
+        private long imported;
+        private long duplicates;
+        private long rejected;
+        private final List<String> errors = new ArrayList<>();
+
+        void reject(long lineNumber, String reason) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(String.format("line %d: %s", lineNumber, reason));
+            }
+        }
+    }
+}
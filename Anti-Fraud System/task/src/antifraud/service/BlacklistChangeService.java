@@ -0,0 +1,18 @@
+package antifraud.service;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import antifraud.domain.BlacklistEntry;
+import antifraud.model.BlacklistChange;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface BlacklistChangeService {
+
+    BlacklistChange record(Blacklist list, BlacklistAction action, String value, LocalDateTime expiresAt);
+
+    void recordAll(Blacklist list, BlacklistAction action, List<BlacklistEntry> entries);
+
+    List<BlacklistChange> findSince(long version, int limit);
+}
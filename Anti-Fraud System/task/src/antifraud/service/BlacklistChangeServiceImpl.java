@@ -0,0 +1,115 @@
+package antifraud.service;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import antifraud.domain.BlacklistEntry;
+import antifraud.index.BlacklistIndex;
+import antifraud.model.BlacklistChange;
+import antifraud.model.BlacklistVersion;
+import antifraud.repository.BlacklistChangeRepository;
+import antifraud.repository.BlacklistVersionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static antifraud.util.TransactionCallbacks.afterCommit;
+
+@Service
+public class BlacklistChangeServiceImpl implements BlacklistChangeService {
+
+    private static final String INSERT_CHANGE = "INSERT INTO blacklist_changes (version, blacklist, action, entry, expires_at, date) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final BlacklistVersionRepository versionRepository;
+    private final BlacklistChangeRepository changeRepository;
+    private final BlacklistIndex blacklistIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public BlacklistChangeServiceImpl(BlacklistVersionRepository versionRepository,
+                                      BlacklistChangeRepository changeRepository,
+                                      BlacklistIndex blacklistIndex,
+                                      TransactionTemplate transactionTemplate,
+                                      JdbcTemplate jdbcTemplate) {
+        this.versionRepository = versionRepository;
+        this.changeRepository = changeRepository;
+        this.blacklistIndex = blacklistIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void createVersion() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!versionRepository.existsById(BlacklistVersion.ID)) {
+                    versionRepository.save(new BlacklistVersion(BlacklistVersion.ID, 0L));
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // another node created it first
+        }
+    }
+
+    // joins the transaction changing the list; the version row stays locked until it commits,
+    // so versions become visible in order and a reader polling with since=N never skips one
+    @Override
+    @Transactional
+    public BlacklistChange record(Blacklist list, BlacklistAction action, String value, LocalDateTime expiresAt) {
+        versionRepository.increment(1);
+        final long version = versionRepository.findCurrent().orElseThrow();
+
+        BlacklistChange change = changeRepository.save(new BlacklistChange(version, list, action, value, expiresAt, LocalDateTime.now()));
+        afterCommit(blacklistIndex::sync);
+        return change;
+    }
+
+    // one version block for the whole chunk, inserted as a single JDBC batch
+    @Override
+    @Transactional
+    public void recordAll(Blacklist list, BlacklistAction action, List<BlacklistEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        versionRepository.increment(entries.size());
+        final long first = versionRepository.findCurrent().orElseThrow() - entries.size() + 1;
+        final Timestamp date = Timestamp.valueOf(LocalDateTime.now());
+
+        jdbcTemplate.batchUpdate(INSERT_CHANGE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                statement.setLong(1, first + i);
+                statement.setString(2, list.name());
+                statement.setString(3, action.name());
+                final LocalDateTime expiresAt = entries.get(i).getExpiresAt();
+                statement.setString(4, entries.get(i).getValue());
+                statement.setTimestamp(5, expiresAt == null ? null : Timestamp.valueOf(expiresAt));
+                statement.setTimestamp(6, date);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entries.size();
+            }
+        });
+        afterCommit(blacklistIndex::sync);
+    }
+
+    @Override
+    public List<BlacklistChange> findSince(long version, int limit) {
+        return changeRepository.findAllByVersionGreaterThanOrderByVersion(version, PageRequest.of(0, limit));
+    }
+}
@@ -2,14 +2,20 @@ package antifraud.service;
 
 import antifraud.domain.TransactionValidationResult;
 import antifraud.exception.CardNotFoundException;
+import antifraud.model.Card;
 import antifraud.model.Transaction;
 
 import javax.transaction.Transactional;
+import java.util.Map;
+import java.util.Set;
 
 public interface CardService {
-    @Transactional
     TransactionValidationResult processAmount(Long amount, String cardNumber);
 
+    TransactionValidationResult processAmount(Long amount, Card card);
+
+    Map<String, Card> findAllByNumberOrDefault(Set<String> cardNumbers);
+
     @Transactional
     void processLimits(Transaction transaction,
                        TransactionValidationResult feedback);
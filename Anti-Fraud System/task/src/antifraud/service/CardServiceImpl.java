@@ -1,7 +1,6 @@
 package antifraud.service;
 
 import antifraud.domain.TransactionValidationResult;
-import antifraud.exception.CardNotFoundException;
 import antifraud.model.Card;
 import antifraud.model.Transaction;
 import antifraud.repository.CardRepository;
@@ -9,6 +8,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static antifraud.domain.TransactionValidationResult.*;
 import static antifraud.util.AntiFraudUtil.decreaseLimit;
@@ -25,10 +28,12 @@ public class CardServiceImpl implements CardService {
     }
 
     @Override
-    @Transactional
     public TransactionValidationResult processAmount(Long amount, String cardNumber) {
+        return processAmount(amount, findCardByNumberOrDefault(cardNumber));
+    }
 
-        Card card = findCardByNumberAndSaveIfAbsent(cardNumber);
+    @Override
+    public TransactionValidationResult processAmount(Long amount, Card card) {
 
         if (amount <= card.getMaxAllowed()) {
             return ALLOWED;
@@ -48,8 +53,9 @@ public class CardServiceImpl implements CardService {
         TransactionValidationResult result = transaction.getResult();
         final String cardNumber = transaction.getNumber();
 
-        Card card = repository.findByNumber(cardNumber)
-                .orElseThrow(() -> new CardNotFoundException(String.format("Card by number %s not found", cardNumber)));
+        // the first limit change of a card is what creates its row. an existing row is locked while it is changed:
+        // under contention H2 can let two updates through the same version check, so the version alone loses updates
+        Card card = repository.findForUpdateByNumber(cardNumber).orElseGet(() -> new Card(cardNumber));
 
         switch (feedback) {
             case ALLOWED:
@@ -91,15 +97,17 @@ public class CardServiceImpl implements CardService {
         repository.save(card);
     }
 
-    private Card findCardByNumberAndSaveIfAbsent(String cardNumber) {
-        var cardFromRepo = repository.findByNumber(cardNumber);
+    @Override
+    public Map<String, Card> findAllByNumberOrDefault(Set<String> cardNumbers) {
+        Map<String, Card> cards = repository.findAllByNumberIn(cardNumbers).stream()
+                .collect(Collectors.toMap(Card::getNumber, Function.identity(), (first, second) -> first));
 
-        return cardFromRepo.isEmpty() ? save(cardNumber) : cardFromRepo.get();
+        cardNumbers.forEach(cardNumber -> cards.computeIfAbsent(cardNumber, Card::new));
+        return cards;
     }
 
-    private Card save(String cardNumber) {
-        Card card = new Card(cardNumber);
-        repository.save(card);
-        return card;
+    // a card without a row has never had its limits changed, so it still has the defaults
+    private Card findCardByNumberOrDefault(String cardNumber) {
+        return repository.findByNumber(cardNumber).orElseGet(() -> new Card(cardNumber));
     }
 }
@@ -0,0 +1,15 @@
+package antifraud.service;
+
+import antifraud.domain.TransactionDto;
+import antifraud.rest.TransactionResponse;
+
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+
+    String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    String IDEMPOTENCY_KEY_TOO_LONG = "Idempotency key must not be longer than " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters";
+
+    TransactionResponse execute(String owner, String key, TransactionDto transaction, Supplier<TransactionResponse> scoring);
+}
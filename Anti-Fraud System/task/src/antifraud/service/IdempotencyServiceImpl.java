@@ -0,0 +1,145 @@
+package antifraud.service;
+
+import antifraud.domain.TransactionDto;
+import antifraud.exception.IdempotencyKeyReuseException;
+import antifraud.model.IdempotencyRecord;
+import antifraud.repository.IdempotencyRecordRepository;
+import antifraud.rest.TransactionResponse;
+import antifraud.util.AntiFraudUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final int maxEntries;
+
+    // a pending future stands for the first request of a key still being scored; retries wait for it instead of scoring again
+    private final ConcurrentMap<String, CompletableFuture<IdempotencyRecord>> records = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public IdempotencyServiceImpl(IdempotencyRecordRepository repository,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${antifraud.idempotency.ttl-ms}") long ttlMillis,
+                                  @Value("${antifraud.idempotency.max-entries}") int maxEntries) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = Duration.ofMillis(ttlMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public TransactionResponse execute(String owner, String key, TransactionDto transaction, Supplier<TransactionResponse> scoring) {
+        final String scopedKey = owner + ':' + key;
+        final String fingerprint = fingerprintOf(transaction);
+
+        while (true) {
+            CompletableFuture<IdempotencyRecord> created = new CompletableFuture<>();
+            CompletableFuture<IdempotencyRecord> existing = records.putIfAbsent(scopedKey, created);
+
+            if (existing == null) {
+                return replay(score(scopedKey, fingerprint, scoring, created), fingerprint);
+            }
+
+            IdempotencyRecord record;
+            try {
+                record = existing.join();
+            } catch (CompletionException | CancellationException e) {
+                // the first request failed and stored nothing, so this one gets to score
+                continue;
+            }
+
+            if (isExpired(record)) {
+                records.remove(scopedKey, existing);
+                continue;
+            }
+            return replay(record, fingerprint);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evict() {
+        records.entrySet().removeIf(entry -> entry.getValue().isDone() && isExpired(entry.getValue().getNow(null)));
+        insertionOrder.removeIf(key -> !records.containsKey(key));
+        transactionTemplate.execute(status -> repository.deleteAllByCreatedBefore(LocalDateTime.now().minus(ttl)));
+    }
+
+    private IdempotencyRecord score(String scopedKey, String fingerprint, Supplier<TransactionResponse> scoring,
+                                    CompletableFuture<IdempotencyRecord> created) {
+        try {
+            IdempotencyRecord record;
+            try {
+                // the record commits together with the scored transaction, so a retry after a crash cannot score twice.
+                // an expired record is deleted first rather than overwritten: the new one is always an insert, and of
+                // two requests racing for a key the second fails on it instead of replacing the first
+                record = transactionTemplate.execute(status -> {
+                    repository.deleteByKeyAndCreatedBefore(scopedKey, LocalDateTime.now().minus(ttl));
+                    return repository.findById(scopedKey).orElseGet(() -> {
+                        TransactionResponse response = scoring.get();
+                        return repository.save(new IdempotencyRecord(scopedKey, fingerprint,
+                                response.getResult(), response.getInfo(), LocalDateTime.now()));
+                    });
+                });
+            } catch (DataIntegrityViolationException e) {
+                // another node stored the key first
+                record = repository.findById(scopedKey).orElseThrow(() -> e);
+            }
+
+            created.complete(record);
+            insertionOrder.add(scopedKey);
+            trim();
+            return record;
+        } catch (RuntimeException e) {
+            records.remove(scopedKey, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void trim() {
+        while (records.size() > maxEntries) {
+            final String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+
+            CompletableFuture<IdempotencyRecord> record = records.get(oldest);
+            if (record != null && !record.isDone()) {
+                insertionOrder.add(oldest);
+                return;
+            }
+            records.remove(oldest, record);
+        }
+    }
+
+    private TransactionResponse replay(IdempotencyRecord record, String fingerprint) {
+        if (!record.getFingerprint().equals(fingerprint)) {
+            throw new IdempotencyKeyReuseException("Idempotency key was already used for a different transaction");
+        }
+        return new TransactionResponse(record.getResult(), record.getInfo());
+    }
+
+    private boolean isExpired(IdempotencyRecord record) {
+        return record.getCreated().plus(ttl).isBefore(LocalDateTime.now());
+    }
+
+    // the address as it is scored, so a retry that spells it differently is still the same request
+    private String fingerprintOf(TransactionDto transaction) {
+        return String.join("|", String.valueOf(transaction.getAmount()), AntiFraudUtil.normalizeIp(transaction.getIp()),
+                transaction.getNumber(), transaction.getRegion(), String.valueOf(transaction.getDate()));
+    }
+}
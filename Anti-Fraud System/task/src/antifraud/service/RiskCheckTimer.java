@@ -0,0 +1,30 @@
+package antifraud.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// times each risk check. the checks run on the request thread, inside its database transaction: the card and correlation
+// lookups then share the request's connection and see one snapshot, and the blacklist lookups are in-memory anyway
+@Component
+public class RiskCheckTimer {
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public RiskCheckTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T time(String check, Supplier<T> supplier) {
+        final long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            meterRegistry.timer("antifraud.risk.checks", "check", check).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -3,13 +3,15 @@ package antifraud.service;
 import antifraud.rest.CardDeletionResponse;
 import antifraud.model.StolenCard;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Set;
 
 public interface StolenCardService {
 
     StolenCard create(StolenCard stolenCard);
     CardDeletionResponse removeByNumber(String number);
-    List<StolenCard> findAll();
 
     boolean isBlacklistedCardNumber(String number);
+
+    Set<String> findBlacklistedCardNumbers(Collection<String> numbers);
 }
@@ -1,6 +1,7 @@
 package antifraud.service;
 
 import antifraud.exception.InvalidNumberException;
+import antifraud.index.BlacklistIndex;
 import antifraud.model.StolenCard;
 import antifraud.rest.CardDeletionResponse;
 import antifraud.exception.CardAlreadyExistException;
@@ -11,26 +12,48 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
-import java.util.List;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static antifraud.domain.Blacklist.STOLEN_CARD;
+import static antifraud.domain.BlacklistAction.ADD;
+import static antifraud.domain.BlacklistAction.REMOVE;
 
 @Service
 public class StolenCardServiceImpl implements StolenCardService {
 
     private final StolenCardRepository stolenCardRepository;
+    private final BlacklistIndex blacklistIndex;
+    private final BlacklistChangeService blacklistChangeService;
 
     @Autowired
-    public StolenCardServiceImpl(StolenCardRepository stolenCardRepository) {
+    public StolenCardServiceImpl(StolenCardRepository stolenCardRepository,
+                                 BlacklistIndex blacklistIndex,
+                                 BlacklistChangeService blacklistChangeService) {
         this.stolenCardRepository = stolenCardRepository;
+        this.blacklistIndex = blacklistIndex;
+        this.blacklistChangeService = blacklistChangeService;
     }
 
     @Override
     @Transactional
     public StolenCard create(StolenCard newStolenCard) {
 
-        stolenCardRepository.findByNumber(newStolenCard.getNumber())
-                .ifPresent(stolenCard -> { throw new CardAlreadyExistException("Card already exist!");});
+        // an expired card still waiting for the purge is renewed in place
+        StolenCard stolenCard = stolenCardRepository.findByNumber(newStolenCard.getNumber())
+                .map(existing -> {
+                    if (!existing.isExpired()) {
+                        throw new CardAlreadyExistException("Card already exist!");
+                    }
+                    existing.setExpiresAt(newStolenCard.getExpiresAt());
+                    return existing;
+                })
+                .orElse(newStolenCard);
 
-        return stolenCardRepository.save(newStolenCard);
+        stolenCard = stolenCardRepository.save(stolenCard);
+        blacklistChangeService.record(STOLEN_CARD, ADD, stolenCard.getNumber(), stolenCard.getExpiresAt());
+        return stolenCard;
     }
 
     @Override
@@ -43,6 +66,7 @@ public class StolenCardServiceImpl implements StolenCardService {
 
         StolenCard stolenCard = stolenCardRepository.findByNumber(number).orElseThrow(() -> new CardNotFoundException("Card not found!"));
         stolenCardRepository.delete(stolenCard);
+        blacklistChangeService.record(STOLEN_CARD, REMOVE, number, null);
 
         String status = String.format("Card %s successfully removed!", number);
 
@@ -50,12 +74,14 @@ public class StolenCardServiceImpl implements StolenCardService {
     }
 
     @Override
-    public List<StolenCard> findAll() {
-        return stolenCardRepository.findAll();
+    public boolean isBlacklistedCardNumber(String number) {
+        return blacklistIndex.isStolen(number);
     }
 
     @Override
-    public boolean isBlacklistedCardNumber(String number) {
-        return this.stolenCardRepository.findByNumber(number).isPresent();
+    public Set<String> findBlacklistedCardNumbers(Collection<String> numbers) {
+        return numbers.stream()
+                .filter(blacklistIndex::isStolen)
+                .collect(Collectors.toSet());
     }
 }
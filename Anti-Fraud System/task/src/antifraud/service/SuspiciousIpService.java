@@ -3,14 +3,16 @@ package antifraud.service;
 import antifraud.rest.AddressDeletionResponse;
 import antifraud.model.Address;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Set;
 
 public interface SuspiciousIpService {
 
-    List<Address> findAll();
     Address create(Address address);
 
     AddressDeletionResponse removeIP(String ip);
 
     boolean isBlacklistedIp(String ip);
+
+    Set<String> findBlacklistedIps(Collection<String> ips);
 }
@@ -1,6 +1,7 @@
 package antifraud.service;
 
 import antifraud.exception.InvalidIpException;
+import antifraud.index.BlacklistIndex;
 import antifraud.rest.AddressDeletionResponse;
 import antifraud.exception.AddressAlreadyExistException;
 import antifraud.exception.AddressNotFoundException;
@@ -11,46 +12,62 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
-import java.util.List;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static antifraud.domain.Blacklist.SUSPICIOUS_IP;
+import static antifraud.domain.BlacklistAction.ADD;
+import static antifraud.domain.BlacklistAction.REMOVE;
 
 @Service
 public class SuspiciousIpServiceImpl implements SuspiciousIpService {
 
     private final SuspiciousIpRepository suspiciousIpRepository;
+    private final BlacklistIndex blacklistIndex;
+    private final BlacklistChangeService blacklistChangeService;
 
     @Autowired
-    public SuspiciousIpServiceImpl(SuspiciousIpRepository suspiciousIpRepository) {
+    public SuspiciousIpServiceImpl(SuspiciousIpRepository suspiciousIpRepository,
+                                   BlacklistIndex blacklistIndex,
+                                   BlacklistChangeService blacklistChangeService) {
         this.suspiciousIpRepository = suspiciousIpRepository;
-    }
-
-    @Override
-    public List<Address> findAll() {
-        return suspiciousIpRepository.findAll();
+        this.blacklistIndex = blacklistIndex;
+        this.blacklistChangeService = blacklistChangeService;
     }
 
     @Override
     @Transactional
     public Address create(Address address) throws AddressAlreadyExistException {
 
+        address.setIp(AntiFraudUtil.normalizeIpRange(address.getIp()));
         var addressOptional = suspiciousIpRepository.findByIp(address.getIp());
 
-        if (addressOptional.isPresent()) {
+        if (addressOptional.isPresent() && !addressOptional.get().isExpired()) {
             throw new AddressAlreadyExistException("IP address already exist!");
         }
 
-        return suspiciousIpRepository.save(address);
+        // an expired range still waiting for the purge is renewed in place, a second row would break the unique ip
+        Address saved = suspiciousIpRepository.save(addressOptional.map(expired -> {
+            expired.setExpiresAt(address.getExpiresAt());
+            return expired;
+        }).orElse(address));
+        blacklistChangeService.record(SUSPICIOUS_IP, ADD, saved.getIp(), saved.getExpiresAt());
+        return saved;
     }
 
     @Override
     @Transactional
     public AddressDeletionResponse removeIP(String ip) throws AddressNotFoundException {
 
-        if (AntiFraudUtil.isValidIP().negate().test(ip)) {
+        if (AntiFraudUtil.isValidIpRange().negate().test(ip)) {
             throw new InvalidIpException("IP address not valid.");
         }
 
+        ip = AntiFraudUtil.normalizeIpRange(ip);
         Address address = suspiciousIpRepository.findByIp(ip).orElseThrow(() -> new AddressNotFoundException("IP address not found!"));
         suspiciousIpRepository.delete(address);
+        blacklistChangeService.record(SUSPICIOUS_IP, REMOVE, ip, null);
 
         String status = String.format("IP %s successfully removed!", ip);
 
@@ -59,6 +76,13 @@ public class SuspiciousIpServiceImpl implements SuspiciousIpService {
 
     @Override
     public boolean isBlacklistedIp(String ip) {
-        return this.suspiciousIpRepository.findByIp(ip).isPresent();
+        return blacklistIndex.isSuspicious(ip);
+    }
+
+    @Override
+    public Set<String> findBlacklistedIps(Collection<String> ips) {
+        return ips.stream()
+                .filter(blacklistIndex::isSuspicious)
+                .collect(Collectors.toSet());
     }
 }
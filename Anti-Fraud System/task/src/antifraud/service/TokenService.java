@@ -0,0 +1,17 @@
+package antifraud.service;
+
+import antifraud.domain.TokenClaims;
+import antifraud.rest.TokenResponse;
+
+import java.util.Optional;
+
+public interface TokenService {
+
+    TokenResponse issue(String username);
+
+    Optional<TokenClaims> verify(String token);
+
+    void versionChanged(String username, long tokenVersion);
+
+    void userRemoved(String username);
+}
@@ -0,0 +1,175 @@
+package antifraud.service;
+
+import antifraud.auth.CredentialCache;
+import antifraud.domain.TokenClaims;
+import antifraud.domain.UserRole;
+import antifraud.domain.UserVersion;
+import antifraud.exception.UserNotFoundException;
+import antifraud.model.User;
+import antifraud.repository.UserRepository;
+import antifraud.rest.TokenResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// a token is "<payload>.<signature>", both base64url: the payload holds the token version, the expiry, the role and the
+// username, the signature is its HMAC-SHA256. checking one needs nothing but the key and the current token version of
+// the user, which every node keeps in memory and refreshes from the users table
+@Slf4j
+@Service
+public class TokenServiceImpl implements TokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // the HMAC-SHA256 block size; a shorter secret is easier to guess than the key it stands for
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final char SEPARATOR = '.';
+    private static final String FIELD_SEPARATOR = ":";
+    private static final int FIELDS = 4;
+    // the user no longer exists; remembered, so tokens of deleted users do not send every request to the database
+    private static final long REMOVED = -1;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final UserRepository userRepository;
+    private final CredentialCache credentialCache;
+    private final SecretKey key;
+    private final Duration ttl;
+    // by lower-case username, as usernames are matched ignoring case
+    private final ConcurrentMap<String, Long> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TokenServiceImpl(UserRepository userRepository,
+                            CredentialCache credentialCache,
+                            @Value("${antifraud.token.secret:}") String secret,
+                            @Value("${antifraud.cluster.expected-nodes}") int expectedNodes,
+                            @Value("${antifraud.token.ttl-ms}") long ttlMillis) throws GeneralSecurityException {
+        this.userRepository = userRepository;
+        this.credentialCache = credentialCache;
+        this.key = signingKeyOf(secret, expectedNodes);
+        this.ttl = Duration.ofMillis(ttlMillis);
+    }
+
+    @Override
+    public TokenResponse issue(String username) {
+        User user = userRepository.findUsersByUsernameIgnoreCase(username).orElseThrow(() -> new UserNotFoundException("User not found"));
+        versionChanged(user.getUsername(), user.getTokenVersion());
+
+        final long expiresAt = Instant.now().plus(ttl).getEpochSecond();
+        final String payload = ENCODER.encodeToString(String.join(FIELD_SEPARATOR, String.valueOf(user.getTokenVersion()),
+                String.valueOf(expiresAt), user.getRole().name(), user.getUsername()).getBytes(UTF_8));
+
+        return TokenResponse.builder()
+                .token(payload + SEPARATOR + ENCODER.encodeToString(sign(payload)))
+                .type(TokenResponse.BEARER)
+                .expiresIn(ttl.toSeconds())
+                .build();
+    }
+
+    @Override
+    public Optional<TokenClaims> verify(String token) {
+        final int separator = token.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return Optional.empty();
+        }
+
+        final String payload = token.substring(0, separator);
+        final String[] fields;
+        try {
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(separator + 1)))) {
+                return Optional.empty();
+            }
+            fields = new String(DECODER.decode(payload), UTF_8).split(FIELD_SEPARATOR, FIELDS);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+
+        // the signature matched, so the payload is one this service wrote
+        TokenClaims claims = new TokenClaims(fields[3], UserRole.valueOf(fields[2]), Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+        if (claims.getExpiresAt() <= Instant.now().getEpochSecond() || claims.getTokenVersion() != currentVersion(claims.getUsername())) {
+            return Optional.empty();
+        }
+        return Optional.of(claims);
+    }
+
+    // versions only grow, so a change that overtakes an older one is never undone
+    @Override
+    public void versionChanged(String username, long tokenVersion) {
+        versions.merge(keyOf(username), tokenVersion, Math::max);
+    }
+
+    @Override
+    public void userRemoved(String username) {
+        versions.put(keyOf(username), REMOVED);
+    }
+
+    // picks up what other nodes changed, for tokens and cached Basic logins alike; a user missing from the table was deleted
+    @Scheduled(fixedDelayString = "${antifraud.token.version-sync-ms}")
+    public void syncVersions() {
+        final Map<String, Long> stored = userRepository.findAllVersions().stream()
+                .collect(Collectors.toMap(user -> keyOf(user.getUsername()), UserVersion::getTokenVersion, Math::max));
+        versions.replaceAll((username, version) -> stored.containsKey(username) ? Math.max(version, stored.get(username)) : REMOVED);
+        credentialCache.retainCurrent(stored);
+    }
+
+    // the database is asked only the first time a node sees a token of the user
+    private long currentVersion(String username) {
+        final Long version = versions.get(keyOf(username));
+        if (version != null) {
+            return version;
+        }
+        final long stored = userRepository.findUsersByUsernameIgnoreCase(username).map(User::getTokenVersion).orElse(REMOVED);
+        return versions.merge(keyOf(username), stored, Math::max);
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // without a shared secret a token is only good on the node that issued it, which a cluster cannot run on
+    private static SecretKey signingKeyOf(String secret, int expectedNodes) throws GeneralSecurityException {
+        if (secret.isEmpty()) {
+            if (expectedNodes > 1) {
+                throw new IllegalStateException("antifraud.token.secret must be set to the same secret on every node when "
+                        + expectedNodes + " nodes are expected");
+            }
+            log.warn("antifraud.token.secret is not set, tokens are signed with a key of this process and only work on this node until it restarts");
+            return KeyGenerator.getInstance(ALGORITHM).generateKey();
+        }
+
+        final byte[] bytes = secret.getBytes(UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("antifraud.token.secret must be at least " + MIN_SECRET_BYTES + " bytes long");
+        }
+        return new SecretKeySpec(bytes, ALGORITHM);
+    }
+
+    private static String keyOf(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
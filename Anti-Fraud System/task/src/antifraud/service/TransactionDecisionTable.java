@@ -0,0 +1,168 @@
+package antifraud.service;
+
+import antifraud.domain.TransactionCorrelation;
+import antifraud.domain.TransactionSignal;
+import antifraud.domain.TransactionValidationResult;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static antifraud.domain.TransactionSignal.*;
+import static antifraud.domain.TransactionValidationResult.*;
+
+public final class TransactionDecisionTable {
+
+    private static final String CARD_NUMBER_REASON = "card-number";
+    private static final String IP_CORRELATION_REASON = "ip-correlation";
+    private static final String REGION_CORRELATION_REASON = "region-correlation";
+    private static final String AMOUNT_REASON = "amount";
+    private static final String IP_REASON = "ip";
+    private static final String NO_REASON = "none";
+
+    private static final Decision[] TABLE = build(rules());
+
+    private TransactionDecisionTable() {
+    }
+
+    public static Decision decide(TransactionValidationResult amountResult, int signals) {
+        return TABLE[amountResult.ordinal() << TransactionSignal.COUNT | signals];
+    }
+
+    public static int signalsOf(TransactionCorrelation correlation, boolean isBlackListedAddress, boolean isBlackListedCardNumber) {
+        int signals = correlationSignals(correlation.getRegionCount(), TWO_REGIONS, MORE_THAN_TWO_REGIONS)
+                | correlationSignals(correlation.getIpCount(), TWO_IPS, MORE_THAN_TWO_IPS);
+
+        if (isBlackListedAddress) {
+            signals |= IP.mask();
+        }
+
+        if (isBlackListedCardNumber) {
+            signals |= CARD_NUMBER.mask();
+        }
+
+        return signals;
+    }
+
+    private static int correlationSignals(long count, TransactionSignal two, TransactionSignal moreThanTwo) {
+        if (count > 2) {
+            return moreThanTwo.mask();
+        }
+        return count == 2 ? two.mask() : 0;
+    }
+
+    // first matching rule wins; a rule without result keeps the one given by the amount
+    private static Map<TransactionValidationResult, List<Rule>> rules() {
+        List<Rule> allowed = new ArrayList<>(List.of(
+                new Rule(PROHIBITED, CARD_NUMBER, IP, TWO_IPS, TWO_REGIONS),
+                new Rule(PROHIBITED, MORE_THAN_TWO_IPS, MORE_THAN_TWO_REGIONS),
+                new Rule(PROHIBITED, CARD_NUMBER, IP),
+                new Rule(PROHIBITED, MORE_THAN_TWO_REGIONS),
+                new Rule(PROHIBITED, MORE_THAN_TWO_IPS),
+                new Rule(PROHIBITED, CARD_NUMBER),
+                new Rule(PROHIBITED, IP),
+                new Rule(MANUAL_PROCESSING, TWO_IPS, TWO_REGIONS),
+                new Rule(MANUAL_PROCESSING, TWO_REGIONS),
+                new Rule(MANUAL_PROCESSING, TWO_IPS)));
+        allowed.add(new Rule(ALLOWED, NO_REASON));
+
+        List<Rule> manual = new ArrayList<>(allowed.subList(0, 7));
+        manual.add(new Rule(null, TWO_IPS, TWO_REGIONS));
+        manual.add(new Rule(null, TWO_REGIONS));
+        manual.add(new Rule(null, TWO_IPS));
+        manual.add(new Rule(null, AMOUNT_REASON));
+
+        List<Rule> prohibited = List.of(
+                new Rule(null, AMOUNT_REASON, CARD_NUMBER, IP, TWO_IPS, TWO_REGIONS),
+                new Rule(null, AMOUNT_REASON, CARD_NUMBER, IP, MORE_THAN_TWO_IPS),
+                new Rule(null, AMOUNT_REASON, CARD_NUMBER, IP, MORE_THAN_TWO_REGIONS),
+                new Rule(null, AMOUNT_REASON, CARD_NUMBER, IP),
+                new Rule(null, AMOUNT_REASON, CARD_NUMBER),
+                new Rule(null, AMOUNT_REASON, IP),
+                new Rule(null, AMOUNT_REASON, MORE_THAN_TWO_REGIONS),
+                new Rule(null, AMOUNT_REASON, MORE_THAN_TWO_IPS),
+                new Rule(null, AMOUNT_REASON));
+
+        Map<TransactionValidationResult, List<Rule>> rules = new EnumMap<>(TransactionValidationResult.class);
+        rules.put(ALLOWED, allowed);
+        rules.put(MANUAL_PROCESSING, manual);
+        rules.put(PROHIBITED, prohibited);
+        return rules;
+    }
+
+    private static Decision[] build(Map<TransactionValidationResult, List<Rule>> rules) {
+        final int combinations = 1 << TransactionSignal.COUNT;
+        Decision[] table = new Decision[TransactionValidationResult.values().length * combinations];
+
+        for (TransactionValidationResult amountResult : TransactionValidationResult.values()) {
+            for (int signals = 0; signals < combinations; signals++) {
+                table[amountResult.ordinal() << TransactionSignal.COUNT | signals] =
+                        match(rules.get(amountResult), amountResult, signals);
+            }
+        }
+
+        return table;
+    }
+
+    private static Decision match(List<Rule> rules, TransactionValidationResult amountResult, int signals) {
+        for (Rule rule : rules) {
+            if ((signals & rule.mask) == rule.mask) {
+                return new Decision(rule.result == null ? amountResult : rule.result, rule.info);
+            }
+        }
+        throw new IllegalStateException("No rule for signals " + signals);
+    }
+
+    private static String reasonOf(TransactionSignal signal) {
+        switch (signal) {
+            case CARD_NUMBER:
+                return CARD_NUMBER_REASON;
+            case IP:
+                return IP_REASON;
+            case TWO_IPS:
+            case MORE_THAN_TWO_IPS:
+                return IP_CORRELATION_REASON;
+            case TWO_REGIONS:
+            case MORE_THAN_TWO_REGIONS:
+                return REGION_CORRELATION_REASON;
+            default:
+                throw new IllegalStateException("Unexpected value: " + signal);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Decision {
+
+        private final TransactionValidationResult result;
+        private final String info;
+    }
+
+    private static final class Rule {
+
+        private final TransactionValidationResult result;
+        private final int mask;
+        private final String info;
+
+        private Rule(TransactionValidationResult result, TransactionSignal... signals) {
+            this(result, null, signals);
+        }
+
+        private Rule(TransactionValidationResult result, String leadingReason, TransactionSignal... signals) {
+            List<String> reasons = new ArrayList<>();
+            if (leadingReason != null) {
+                reasons.add(leadingReason);
+            }
+            for (TransactionSignal signal : signals) {
+                reasons.add(reasonOf(signal));
+            }
+
+            this.result = result;
+            this.mask = TransactionSignal.maskOf(signals);
+            this.info = String.join(", ", reasons).intern();
+        }
+    }
+}
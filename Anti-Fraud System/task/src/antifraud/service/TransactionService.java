@@ -1,21 +1,17 @@
 package antifraud.service;
 
 import antifraud.rest.FeedbackUpdateRequest;
-import antifraud.domain.Region;
 import antifraud.domain.TransactionDto;
 import antifraud.rest.TransactionResponse;
 import antifraud.model.Transaction;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 public interface TransactionService {
 
     TransactionResponse validate(TransactionDto transaction);
 
-    List<Transaction> findAlLByNumberAndDateBetweenAndRegionNot(String number, LocalDateTime before, LocalDateTime now, Region region);
-
-    List<Transaction> findAllByNumberAndDateIsBetweenAndIpNot(String number, LocalDateTime before, LocalDateTime now, String ip);
+    List<TransactionResponse> validateAll(List<TransactionDto> transactions);
 
     Transaction updateTransactionFeedback(FeedbackUpdateRequest request);
 
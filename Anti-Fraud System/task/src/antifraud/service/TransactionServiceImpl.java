@@ -2,53 +2,136 @@ package antifraud.service;
 
 import antifraud.domain.*;
 import antifraud.exception.*;
+import antifraud.index.TransactionWindowIndex;
+import antifraud.journal.TransactionWriter;
+import antifraud.model.Card;
 import antifraud.model.Transaction;
 import antifraud.repository.TransactionRepository;
 import antifraud.rest.FeedbackUpdateRequest;
 import antifraud.rest.TransactionResponse;
 import antifraud.util.AntiFraudUtil;
+import antifraud.util.TransactionCallbacks;
 import lombok.AllArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.transaction.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.function.BiFunction;
-
-import static antifraud.domain.TransactionValidationResult.*;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
 public class TransactionServiceImpl implements TransactionService {
 
-    private static final String CARD_NUMBER = "card-number";
-    private static final String IP_CORRELATION = "ip-correlation";
-    private static final String REGION_CORRELATION = "region-correlation";
-    private static final String AMOUNT = "amount";
-    private static final String IP = "ip";
+    private static final int MAX_FEEDBACK_ATTEMPTS = 16;
+
     private final TransactionRepository transactionRepository;
     private final SuspiciousIpService suspiciousIpService;
     private final StolenCardService stolenCardService;
     private final CardService cardService;
+    private final TransactionWindowIndex windowIndex;
+    private final TransactionWriter transactionWriter;
+    private final RiskCheckTimer riskChecks;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
     @Transactional
     public TransactionResponse validate(TransactionDto dto) {
 
-        final Region region = Region.toRegion(dto.getRegion());
-        final LocalDateTime date = dto.getDate();
-        Transaction transaction = new Transaction(dto.getAmount(), dto.getIp(), dto.getNumber(), region, date);
+        Transaction transaction = toTransaction(dto);
         TransactionResponse resp = getTransactionResponse(transaction);
         transaction.setResult(resp.getResult());
-        transactionRepository.save(transaction);
+        transactionWriter.write(transaction);
+        // a rolled back transaction must not show up in later correlations
+        TransactionCallbacks.afterCommit(() -> windowIndex.record(transaction));
         return resp;
     }
 
     @Override
     @Transactional
+    public List<TransactionResponse> validateAll(List<TransactionDto> dtos) {
+
+        final List<Transaction> transactions = dtos.stream().map(this::toTransaction).collect(Collectors.toList());
+        final Set<String> numbers = transactions.stream().map(Transaction::getNumber).collect(Collectors.toSet());
+        final Set<String> ips = transactions.stream().map(Transaction::getIp).collect(Collectors.toSet());
+
+        final Map<String, Card> cards = riskChecks.time("amount", () -> cardService.findAllByNumberOrDefault(numbers));
+        final Set<String> blacklistedIps = riskChecks.time("ip", () -> suspiciousIpService.findBlacklistedIps(ips));
+        final Set<String> blacklistedNumbers = riskChecks.time("card-number", () -> stolenCardService.findBlacklistedCardNumbers(numbers));
+        final BatchWindow window = new BatchWindow(transactions);
+
+        List<TransactionResponse> responses = new ArrayList<>(transactions.size());
+
+        for (Transaction transaction : transactions) {
+            var result = cardService.processAmount(transaction.getAmount(), cards.get(transaction.getNumber()));
+            int signals = TransactionDecisionTable.signalsOf(window.correlate(transaction),
+                    blacklistedIps.contains(transaction.getIp()),
+                    blacklistedNumbers.contains(transaction.getNumber()));
+            var decision = TransactionDecisionTable.decide(result, signals);
+
+            transaction.setResult(decision.getResult());
+            window.add(transaction);
+            responses.add(new TransactionResponse(decision.getResult(), decision.getInfo()));
+        }
+
+        transactionWriter.writeAll(transactions);
+        TransactionCallbacks.afterCommit(() -> transactions.forEach(windowIndex::record));
+        return responses;
+    }
+
+    @Override
     public Transaction updateTransactionFeedback(FeedbackUpdateRequest request) {
 
+        transactionWriter.flush();
+
+        // card rows are locked while their limits change and card numbers are unique, so a lock timeout or a
+        // concurrent first creation of the same card makes the whole update start over; any other failure is final
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> applyFeedback(request));
+            } catch (OptimisticLockingFailureException | PessimisticLockingFailureException e) {
+                // retried below
+            } catch (DataIntegrityViolationException e) {
+                if (!violates(e, Card.NUMBER_CONSTRAINT)) {
+                    throw e;
+                }
+            }
+
+            if (attempt == MAX_FEEDBACK_ATTEMPTS) {
+                throw new CardLimitUpdateConflictException("Card limits were changed concurrently, please retry");
+            }
+            backOff(attempt);
+        }
+    }
+
+    private static boolean violates(DataIntegrityViolationException e, String constraint) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                final String violated = ((ConstraintViolationException) cause).getConstraintName();
+                return violated != null && violated.toLowerCase(Locale.ROOT).contains(constraint);
+            }
+        }
+        return false;
+    }
+
+    // random jitter that grows with the attempt, so the updates racing for one card do not collide again in lockstep
+    private void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1L, 2L << Math.min(attempt, 6)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardLimitUpdateConflictException("Interrupted while retrying card limit update");
+        }
+    }
+
+    private Transaction applyFeedback(FeedbackUpdateRequest request) {
         Transaction transaction = transactionRepository.findById(request.getTransactionId())
                 .orElseThrow(() -> new TransactionNotFoundException(String.format("Transaction for id = %s not found", request.getTransactionId())));
 
@@ -71,6 +154,7 @@ public class TransactionServiceImpl implements TransactionService {
 
     @Override
     public List<Transaction> findAll() {
+        transactionWriter.flush();
         return transactionRepository.findAll();
     }
 
@@ -81,7 +165,8 @@ public class TransactionServiceImpl implements TransactionService {
             throw new InvalidNumberException("card number validation failed");
         }
 
-        final List<Transaction> transactions = transactionRepository.findAllByNumber(number);
+        transactionWriter.flush();
+        final List<Transaction> transactions = transactionRepository.findAllByNumberOrderById(number);
 
         if (transactions.isEmpty()) {
             throw new TransactionNotFoundException(String.format("No transaction for number = %s found", number));
@@ -89,192 +174,97 @@ public class TransactionServiceImpl implements TransactionService {
         return transactions;
     }
 
-    @Override
-    public List<Transaction> findAlLByNumberAndDateBetweenAndRegionNot(String number, LocalDateTime before, LocalDateTime now, Region region) {
-        return this.transactionRepository.findAlLByNumberAndDateBetweenAndRegionNot(number, before, now, region);
+    private Transaction toTransaction(TransactionDto dto) {
+        final Region region = Region.toRegion(dto.getRegion());
+        final LocalDateTime date = dto.getDate();
+        return new Transaction(dto.getAmount(), AntiFraudUtil.normalizeIp(dto.getIp()), dto.getNumber(), region, date);
     }
 
-    @Override
-    public List<Transaction> findAllByNumberAndDateIsBetweenAndIpNot(String number, LocalDateTime before, LocalDateTime now, String ip) {
-        return this.transactionRepository.findAllByNumberAndDateIsBetweenAndIpNot(number, before, now, ip);
-    }
+    private TransactionCorrelation correlate(Transaction transaction) {
+        final String ip = transaction.getIp();
+        final String number = transaction.getNumber();
+        final Region region = transaction.getRegion();
+        final LocalDateTime date = transaction.getDate();
 
-    private TransactionResponse getTransactionResponse(Transaction transaction) {
-        var result = cardService.processAmount(transaction.getAmount(), transaction.getNumber());
-        return new TransactionServiceResponse(transaction).setResult(result).get();
+        return windowIndex.correlate(number, ip, region, date).orElseGet(() -> {
+            transactionWriter.flush();
+            return transactionRepository.countCorrelations(number, ip, region, date.minus(TransactionWindowIndex.WINDOW), date);
+        });
     }
 
-    protected class TransactionServiceResponse {
-
-        private boolean isTransactionFromTwoDifferentRegions;
-        private boolean isTransactionFromTwoDifferentIps;
-        private boolean isTransactionFromMoreThanTwoDifferentRegions;
-        private boolean isTransactionFromMoreThanTwoDifferentIps;
-
-        private boolean isBlackListedAddress;
-        private boolean isBlackListedCardNumber;
-
-        private final TransactionResponse.TransactionResponseBuilder tb = TransactionResponse.builder();
-
-        private TransactionValidationResult result;
-
-        public TransactionServiceResponse(Transaction transaction) {
-            setUp(transaction);
-        }
+    private TransactionResponse getTransactionResponse(Transaction transaction) {
+        var amount = riskChecks.time("amount", () -> cardService.processAmount(transaction.getAmount(), transaction.getNumber()));
+        var correlation = riskChecks.time("correlation", () -> correlate(transaction));
+        var blacklistedIp = riskChecks.time("ip", () -> suspiciousIpService.isBlacklistedIp(transaction.getIp()));
+        var blacklistedNumber = riskChecks.time("card-number", () -> stolenCardService.isBlacklistedCardNumber(transaction.getNumber()));
 
-        private void setUp(Transaction transaction) {
-            final String ip = transaction.getIp();
-            final String number = transaction.getNumber();
-            Region region = transaction.getRegion();
-            LocalDateTime date = transaction.getDate();
-            LocalDateTime lastHour = date.minusHours(1);
+        int signals = TransactionDecisionTable.signalsOf(correlation, blacklistedIp, blacklistedNumber);
+        var decision = TransactionDecisionTable.decide(amount, signals);
 
-            long numTransactionsNotInRegion = findAlLByNumberAndDateBetweenAndRegionNot(number,
-                    lastHour, date, region).stream().map(Transaction::getRegion).distinct().count();
+        return new TransactionResponse(decision.getResult(), decision.getInfo());
+    }
 
-            long numTransactionsNotWithIp = findAllByNumberAndDateIsBetweenAndIpNot(number,
-                    lastHour, date, ip).stream().map(Transaction::getIp).distinct().count();
+    private class BatchWindow {
 
-            isTransactionFromTwoDifferentRegions = equalTwo(numTransactionsNotInRegion);
-            isTransactionFromTwoDifferentIps = equalTwo(numTransactionsNotWithIp);
-            isTransactionFromMoreThanTwoDifferentRegions = isGreaterThanTwo(numTransactionsNotInRegion);
-            isTransactionFromMoreThanTwoDifferentIps = isGreaterThanTwo(numTransactionsNotWithIp);
+        private final List<Transaction> batch;
+        // the batch so far, by card; the window index only learns about it once the batch commits
+        private final Map<String, List<Transaction>> scored = new HashMap<>();
+        private Map<String, List<Transaction>> history;
 
-            isBlackListedAddress = suspiciousIpService.isBlacklistedIp(ip);
-            isBlackListedCardNumber = stolenCardService.isBlacklistedCardNumber(number);
+        BatchWindow(List<Transaction> batch) {
+            this.batch = batch;
         }
 
-        public TransactionServiceResponse setResult(TransactionValidationResult result) {
-            this.result = result;
-            return this;
+        TransactionCorrelation correlate(Transaction transaction) {
+            return windowIndex.correlate(transaction.getNumber(), transaction.getIp(), transaction.getRegion(), transaction.getDate(),
+                            scored.getOrDefault(transaction.getNumber(), List.of()))
+                    .orElseGet(() -> correlate(transaction, history().getOrDefault(transaction.getNumber(), List.of())));
         }
 
-        public TransactionResponse get() {
-
-            switch (result) {
-                case ALLOWED:
-                    return doAllowed();
-                case MANUAL_PROCESSING:
-                    return doManual();
-                case PROHIBITED:
-                    return doProhibit();
-                default:
-                    throw new IllegalStateException("Unexpected value: " + result);
-            }
-        }
+        void add(Transaction transaction) {
+            scored.computeIfAbsent(transaction.getNumber(), number -> new ArrayList<>()).add(transaction);
 
-        private TransactionResponse doAllowed() {
-            if (prohibit()) {
-                tb.result(PROHIBITED).info(joinReasons(CARD_NUMBER, IP, IP_CORRELATION, REGION_CORRELATION));
-            } else if (moreThanTwoIpsAndRegions()) {
-                tb.result(PROHIBITED).info(joinReasons(IP_CORRELATION, REGION_CORRELATION));
-            } else if (cardAndAddressBlacklisted()) {
-                tb.result(PROHIBITED).info(joinReasons(CARD_NUMBER, IP));
-            } else if (isTransactionFromMoreThanTwoDifferentRegions) {
-                tb.result(PROHIBITED).info(REGION_CORRELATION);
-            } else if (isTransactionFromMoreThanTwoDifferentIps) {
-                tb.result(PROHIBITED).info(IP_CORRELATION);
-            } else if (isBlackListedCardNumber) {
-                tb.result(PROHIBITED).info(CARD_NUMBER);
-            } else if (isBlackListedAddress) {
-                tb.result(PROHIBITED).info(IP);
-            } else if (ipAndRegionCorrelation()) {
-                tb.result(MANUAL_PROCESSING).info(joinReasons(IP_CORRELATION, REGION_CORRELATION));
-            } else if (isTransactionFromTwoDifferentRegions) {
-                tb.result(MANUAL_PROCESSING).info(REGION_CORRELATION);
-            } else if (isTransactionFromTwoDifferentIps) {
-                tb.result(MANUAL_PROCESSING).info(IP_CORRELATION);
-            } else {
-                tb.result(ALLOWED).info("none");
+            if (history != null) {
+                history.computeIfAbsent(transaction.getNumber(), number -> new ArrayList<>()).add(transaction);
             }
-
-            return tb.build();
         }
 
-        private TransactionResponse doProhibit() {
-            tb.result(result);
-            if (prohibit()) {
-                tb.info(joinReasons(AMOUNT, CARD_NUMBER, IP, IP_CORRELATION, REGION_CORRELATION));
-            } else if (check().apply(cardAndAddressBlacklisted(), isTransactionFromMoreThanTwoDifferentIps)) {
-                tb.info(joinReasons(AMOUNT, CARD_NUMBER, IP, IP_CORRELATION));
-            } else if (check().apply(cardAndAddressBlacklisted(), isTransactionFromMoreThanTwoDifferentRegions)) {
-                tb.info(joinReasons(AMOUNT, CARD_NUMBER, IP, REGION_CORRELATION));
-            } else if (cardAndAddressBlacklisted()) {
-                tb.info(joinReasons(AMOUNT, CARD_NUMBER, IP));
-            } else if (isBlackListedCardNumber) {
-                tb.info(joinReasons(AMOUNT, CARD_NUMBER));
-            } else if (isBlackListedAddress) {
-                tb.info(joinReasons(AMOUNT, IP));
-            } else if (isTransactionFromMoreThanTwoDifferentRegions) {
-                tb.info(joinReasons(AMOUNT, REGION_CORRELATION));
-            } else if (isTransactionFromMoreThanTwoDifferentIps) {
-                tb.info(joinReasons(AMOUNT, IP_CORRELATION));
-            } else {
-                tb.info(AMOUNT);
+        private TransactionCorrelation correlate(Transaction transaction, List<Transaction> cardHistory) {
+            final LocalDateTime date = transaction.getDate();
+            final LocalDateTime lastHour = date.minus(TransactionWindowIndex.WINDOW);
+
+            Set<Region> regions = EnumSet.noneOf(Region.class);
+            Set<String> ips = new HashSet<>();
+
+            for (Transaction previous : cardHistory) {
+                if (previous.getDate().isBefore(lastHour) || previous.getDate().isAfter(date)) {
+                    continue;
+                }
+                if (previous.getRegion() != transaction.getRegion()) {
+                    regions.add(previous.getRegion());
+                }
+                if (!previous.getIp().equals(transaction.getIp())) {
+                    ips.add(previous.getIp());
+                }
             }
 
-            return tb.build();
+            return new TransactionCorrelation((long) regions.size(), (long) ips.size());
         }
 
-        private TransactionResponse doManual() {
-            tb.result(result);
-            if (prohibit()) {
-                tb.result(PROHIBITED).info(joinReasons(CARD_NUMBER, IP, IP_CORRELATION, REGION_CORRELATION));
-            } else if (moreThanTwoIpsAndRegions()) {
-                tb.result(PROHIBITED).info(joinReasons(IP_CORRELATION, REGION_CORRELATION));
-            } else if (cardAndAddressBlacklisted()) {
-                tb.result(PROHIBITED).info(joinReasons(CARD_NUMBER, IP));
-            } else if (isTransactionFromMoreThanTwoDifferentRegions) {
-                tb.result(PROHIBITED).info(REGION_CORRELATION);
-            } else if (isTransactionFromMoreThanTwoDifferentIps) {
-                tb.result(PROHIBITED).info(IP_CORRELATION);
-            } else if (isBlackListedCardNumber) {
-                tb.result(PROHIBITED).info(CARD_NUMBER);
-            } else if (isBlackListedAddress) {
-                tb.result(PROHIBITED).info(IP);
-            } else if (ipAndRegionCorrelation()) {
-                tb.info(joinReasons(IP_CORRELATION, REGION_CORRELATION));
-            } else if (isTransactionFromTwoDifferentRegions) {
-                tb.info(REGION_CORRELATION);
-            } else if (isTransactionFromTwoDifferentIps) {
-                tb.info(IP_CORRELATION);
-            } else {
-                tb.info(AMOUNT);
+        // loaded on the first transaction the window index cannot answer, covering the whole batch at once
+        private Map<String, List<Transaction>> history() {
+            if (history == null) {
+                final Set<String> numbers = batch.stream().map(Transaction::getNumber).collect(Collectors.toSet());
+                final LocalDateTime start = batch.stream().map(Transaction::getDate).min(Comparator.naturalOrder()).orElseThrow()
+                        .minus(TransactionWindowIndex.WINDOW);
+                final LocalDateTime end = batch.stream().map(Transaction::getDate).max(Comparator.naturalOrder()).orElseThrow();
+
+                transactionWriter.flush();
+                history = transactionRepository.findAllByNumberInAndDateBetween(numbers, start, end).stream()
+                        .collect(Collectors.groupingBy(Transaction::getNumber, HashMap::new, Collectors.toCollection(ArrayList::new)));
+                scored.forEach((number, transactions) -> history.computeIfAbsent(number, key -> new ArrayList<>()).addAll(transactions));
             }
-
-            return tb.build();
-        }
-
-        private String joinReasons(String... reasons) {
-            return String.join(", ", reasons);
-        }
-
-        private boolean prohibit() {
-            return check().apply(cardAndAddressBlacklisted(), ipAndRegionCorrelation());
-        }
-
-        private boolean ipAndRegionCorrelation() {
-            return check().apply(isTransactionFromTwoDifferentIps, isTransactionFromTwoDifferentRegions);
-        }
-
-        private boolean cardAndAddressBlacklisted() {
-            return check().apply(isBlackListedCardNumber, isBlackListedAddress);
-        }
-
-        private boolean moreThanTwoIpsAndRegions() {
-            return check().apply(isTransactionFromMoreThanTwoDifferentIps, isTransactionFromMoreThanTwoDifferentRegions);
-        }
-
-        private BiFunction<Boolean, Boolean, Boolean> check() {
-            return (a, b) -> a && b;
-        }
-
-        private boolean isGreaterThanTwo(long value) {
-            return value > 2;
-        }
-
-        private boolean equalTwo(long value) {
-            return value == 2;
+            return history;
         }
     }
 }
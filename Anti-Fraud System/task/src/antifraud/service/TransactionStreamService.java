@@ -0,0 +1,12 @@
+package antifraud.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface TransactionStreamService {
+
+    String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    void validate(InputStream transactions, OutputStream responses, String path) throws IOException;
+}
@@ -0,0 +1,155 @@
+package antifraud.service;
+
+import antifraud.domain.AntiFraudCustomErrorMessage;
+import antifraud.domain.TransactionDto;
+import antifraud.exception.InvalidRegionException;
+import antifraud.exception.TransactionDateParsingException;
+import antifraud.exception.TransactionJournalException;
+import antifraud.rest.TransactionResponse;
+import antifraud.util.BoundedLineReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@Service
+public class TransactionStreamServiceImpl implements TransactionStreamService {
+
+    private static final byte NEW_LINE = '\n';
+
+    private final TransactionService transactionService;
+    private final Validator validator;
+    private final ObjectReader dtoReader;
+    private final ObjectWriter lineWriter;
+    private final int chunkSize;
+    private final int maxLineLength;
+
+    @Autowired
+    public TransactionStreamServiceImpl(TransactionService transactionService,
+                                        Validator validator,
+                                        ObjectMapper objectMapper,
+                                        @Value("${antifraud.stream.chunk-size}") int chunkSize,
+                                        @Value("${antifraud.stream.max-line-length}") int maxLineLength) {
+        this.transactionService = transactionService;
+        this.validator = validator;
+        this.dtoReader = objectMapper.readerFor(TransactionDto.class);
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.chunkSize = chunkSize;
+        this.maxLineLength = maxLineLength;
+    }
+
+    // at most one chunk of lines of bounded length is held in memory; the next one is only read once the previous
+    // responses are written
+    @Override
+    public void validate(InputStream transactions, OutputStream responses, String path) throws IOException {
+        BoundedLineReader reader = new BoundedLineReader(new InputStreamReader(transactions, StandardCharsets.UTF_8), maxLineLength);
+        OutputStream out = new BufferedOutputStream(responses);
+        List<TransactionDto> chunk = new ArrayList<>(chunkSize);
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            String error = null;
+            if (reader.isTruncated()) {
+                error = "Transaction is longer than " + maxLineLength + " characters";
+            } else {
+                try {
+                    TransactionDto dto = dtoReader.readValue(line);
+                    error = validationError(dto);
+                    if (error == null) {
+                        chunk.add(dto);
+                    }
+                } catch (JsonProcessingException e) {
+                    error = "Malformed transaction";
+                }
+            }
+
+            if (error != null) {
+                writeChunk(chunk, out, path);
+                writeLine(out, errorOf(HttpStatus.BAD_REQUEST, error, path));
+            } else if (chunk.size() == chunkSize) {
+                writeChunk(chunk, out, path);
+            }
+        }
+
+        writeChunk(chunk, out, path);
+        out.flush();
+    }
+
+    private String validationError(TransactionDto dto) {
+        Set<ConstraintViolation<TransactionDto>> violations = validator.validate(dto);
+
+        if (!violations.isEmpty()) {
+            return violations.iterator().next().getMessage();
+        }
+
+        try {
+            dto.getDate();
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    private void writeChunk(List<TransactionDto> chunk, OutputStream out, String path) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (TransactionResponse response : transactionService.validateAll(chunk)) {
+                writeLine(out, response);
+            }
+        } catch (InvalidRegionException | TransactionDateParsingException e) {
+            writeErrors(chunk.size(), out, errorOf(HttpStatus.BAD_REQUEST, e.getMessage(), path));
+        } catch (TransactionJournalException e) {
+            writeErrors(chunk.size(), out, errorOf(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), path));
+        } catch (RuntimeException e) {
+            // anything else is on our side and would fail the following chunks too: answer this one, then end the stream
+            writeErrors(chunk.size(), out, errorOf(HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase(), path));
+            out.flush();
+            throw e;
+        }
+
+        chunk.clear();
+        out.flush();
+    }
+
+    private void writeErrors(int count, OutputStream out, AntiFraudCustomErrorMessage error) throws IOException {
+        for (int i = 0; i < count; i++) {
+            writeLine(out, error);
+        }
+    }
+
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(lineWriter.writeValueAsBytes(value));
+        out.write(NEW_LINE);
+    }
+
+    private AntiFraudCustomErrorMessage errorOf(HttpStatus status, String message, String path) {
+        return AntiFraudCustomErrorMessage.builder()
+                .timestamp(LocalDateTime.now().toString())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .message(message)
+                .path(path)
+                .build();
+    }
+}
@@ -4,6 +4,7 @@ import antifraud.auth.UserDetailsImpl;
 import antifraud.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -11,7 +12,7 @@ import org.springframework.stereotype.Service;
 import java.util.Optional;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserService userService;
 
@@ -29,4 +30,13 @@ public class UserDetailsServiceImpl implements UserDetailsService {
             throw new UsernameNotFoundException("Not found " + username);
         }
     }
+
+    // called by the authentication provider after a successful login whose stored hash is at another cost
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (!userService.upgradePassword(user.getUsername(), user.getPassword(), newPassword)) {
+            return user;
+        }
+        return loadUserByUsername(user.getUsername());
+    }
 }
@@ -27,4 +27,6 @@ public interface UserService {
     UserDto update(RoleChangeRequest request);
 
     AccessUpdateResponse updateAccess(AccessUpdateRequest request);
+
+    boolean upgradePassword(String username, String oldPassword, String newPassword);
 }
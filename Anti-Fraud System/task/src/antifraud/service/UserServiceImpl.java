@@ -1,5 +1,6 @@
 package antifraud.service;
 
+import antifraud.auth.CredentialCache;
 import antifraud.domain.*;
 import antifraud.exception.AdminLockException;
 import antifraud.exception.RoleUpdateException;
@@ -12,6 +13,7 @@ import antifraud.rest.AccessUpdateRequest;
 import antifraud.rest.AccessUpdateResponse;
 import antifraud.rest.RoleChangeRequest;
 import antifraud.rest.UserDeletionResponse;
+import antifraud.util.TransactionCallbacks;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -27,11 +29,16 @@ public class UserServiceImpl implements UserService {
 
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final CredentialCache credentialCache;
+    private final TokenService tokenService;
 
     @Autowired
-    public UserServiceImpl(UserRepository userRepository, UserMapper userMapper) {
+    public UserServiceImpl(UserRepository userRepository, UserMapper userMapper, CredentialCache credentialCache,
+                           TokenService tokenService) {
         this.userRepository = userRepository;
         this.userMapper = userMapper;
+        this.credentialCache = credentialCache;
+        this.tokenService = tokenService;
     }
 
     @Override
@@ -72,6 +79,12 @@ public class UserServiceImpl implements UserService {
     public UserDeletionResponse remove(String username) {
         User user = userRepository.findUsersByUsernameIgnoreCase(username).orElseThrow(() -> new UserNotFoundException("User not found"));
         userRepository.delete(user);
+
+        final String removed = user.getUsername();
+        TransactionCallbacks.afterCommit(() -> {
+            credentialCache.invalidate(removed);
+            tokenService.userRemoved(removed);
+        });
         return UserDeletionResponse.builder().status(UserDeletionResponse.DEFAULT_STATUS).username(username).build();
     }
 
@@ -91,7 +104,9 @@ public class UserServiceImpl implements UserService {
         }
 
         user.setRole(UserRole.valueOf("ROLE_" + request.getRole()));
+        user.rotateTokenVersion();
         user = userRepository.save(user);
+        invalidateCredentials(user);
 
         return userMapper.toDto(user);
     }
@@ -108,11 +123,30 @@ public class UserServiceImpl implements UserService {
 
         final String operation = request.getOperation();
         user.setAccountNonLocked(!"LOCK".equals(operation));
+        user.rotateTokenVersion();
 
         user = userRepository.save(user);
+        invalidateCredentials(user);
 
         return AccessUpdateResponse.builder()
                 .status(String.format("User %s %sed!", user.getUsername(), operation.toLowerCase()))
                 .build();
     }
+
+    // same password at another cost: cached logins and issued tokens stay valid
+    @Override
+    @Transactional
+    public boolean upgradePassword(String username, String oldPassword, String newPassword) {
+        return userRepository.updatePassword(username, oldPassword, newPassword) > 0;
+    }
+
+    // after the commit, so a login that reads the user in between cannot cache the old state
+    private void invalidateCredentials(User user) {
+        final String username = user.getUsername();
+        final long tokenVersion = user.getTokenVersion();
+        TransactionCallbacks.afterCommit(() -> {
+            credentialCache.invalidate(username);
+            tokenService.versionChanged(username, tokenVersion);
+        });
+    }
 }
@@ -1,17 +1,30 @@
 package antifraud.util;
 
+import antifraud.ip.IpAddress;
+import antifraud.ip.IpRange;
+
 import java.util.function.Predicate;
 
 public class AntiFraudUtil {
 
-    private transient static final String IPV4_PATTERN =
-            "^([0-9]|[1-9][0-9]|1[0-9][0-9]|2[0-4][0-9]|25[0-5])\\." +
-                    "([0-9]|[1-9][0-9]|1[0-9][0-9]|2[0-4][0-9]|25[0-5])\\." +
-                    "([0-9]|[1-9][0-9]|1[0-9][0-9]|2[0-4][0-9]|25[0-5])\\." +
-                    "([0-9]|[1-9][0-9]|1[0-9][0-9]|2[0-4][0-9]|25[0-5])$";
-
+    // IPv4 or IPv6
     public static Predicate<String> isValidIP() {
-        return ip -> ip.matches(IPV4_PATTERN);
+        return IpAddress::isValid;
+    }
+
+    // a single address or a CIDR prefix such as 10.1.0.0/16 or 2001:db8::/32, without host bits set
+    public static Predicate<String> isValidIpRange() {
+        return IpRange::isValid;
+    }
+
+    // one text form per address or range: IPv6 compressed and in lower case, no /32 or /128 on a single address,
+    // so nothing can be blacklisted twice under different spellings
+    public static String normalizeIpRange(String range) {
+        return IpRange.parse(range).toString();
+    }
+
+    public static String normalizeIp(String ip) {
+        return IpAddress.parse(ip).toString();
     }
 
     public static Predicate<String> isValidNumber() {
@@ -0,0 +1,69 @@
+package antifraud.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// reads lines like BufferedReader.readLine, but keeps at most maxLength chars of any one line: the rest of a longer
+// line is skipped and the line is reported as truncated, so a single huge line cannot grow the heap
+public class BoundedLineReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final int maxLength;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder line = new StringBuilder();
+    private int position;
+    private int limit;
+    private boolean skipLineFeed;
+    private boolean truncated;
+
+    public BoundedLineReader(Reader reader, int maxLength) {
+        this.reader = reader;
+        this.maxLength = maxLength;
+    }
+
+    // null at the end of the input; \n, \r and \r\n all end a line
+    public String readLine() throws IOException {
+        line.setLength(0);
+        truncated = false;
+        boolean read = false;
+
+        for (int c = next(); c >= 0; c = next()) {
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            read = true;
+            if (c == '\n' || c == '\r') {
+                skipLineFeed = c == '\r';
+                return line.toString();
+            }
+            if (line.length() < maxLength) {
+                line.append((char) c);
+            } else {
+                truncated = true;
+            }
+        }
+        return read ? line.toString() : null;
+    }
+
+    // whether the last line read was longer than maxLength
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private int next() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+}
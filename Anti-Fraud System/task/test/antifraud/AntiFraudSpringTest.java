@@ -0,0 +1,17 @@
+package antifraud;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// one in-memory database for all the integration tests, so they share a single application context
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@SpringBootTest(classes = AntiFraudApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:antifraud-test;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop"})
+public @interface AntiFraudSpringTest {
+}
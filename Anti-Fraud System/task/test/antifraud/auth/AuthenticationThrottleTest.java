@@ -0,0 +1,36 @@
+package antifraud.auth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AuthenticationThrottleTest {
+
+    private AuthenticationThrottle throttle;
+
+    // the addresses fail first, so every username still has its free failures
+    @Before
+    public void createThrottle() {
+        throttle = new AuthenticationThrottle(new SimpleMeterRegistry(), 1024, 5, 0, 60_000, 900_000);
+    }
+
+    @Test
+    public void countsAnIpv6ClientByItsSlash64() {
+        throttle.failed("alice", "2001:db8:0:7::1");
+
+        assertTrue(throttle.retryAfterMillis("bob", "2001:db8:0:7:ffff:1:2:3") > 0);
+        assertTrue(throttle.retryAfterMillis("bob", "2001:DB8:0:7::2") > 0);
+        assertEquals(0, throttle.retryAfterMillis("bob", "2001:db8:0:8::1"));
+    }
+
+    @Test
+    public void countsEveryIpv4AddressOnItsOwn() {
+        throttle.failed("alice", "10.5.0.1");
+
+        assertTrue(throttle.retryAfterMillis("bob", "10.5.0.1") > 0);
+        assertTrue(throttle.retryAfterMillis("bob", "::ffff:10.5.0.1") > 0);
+        assertEquals(0, throttle.retryAfterMillis("bob", "10.5.0.2"));
+    }
+}
@@ -0,0 +1,71 @@
+package antifraud.auth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingBasicAuthenticationFilterTest {
+
+    private final AtomicInteger checks = new AtomicInteger();
+    private CachingBasicAuthenticationFilter filter;
+
+    @Before
+    public void createFilter() throws Exception {
+        SecurityContextHolder.clearContext();
+        filter = new CachingBasicAuthenticationFilter(
+                authentication -> {
+                    checks.incrementAndGet();
+                    if (!"secret".equals(authentication.getCredentials())) {
+                        throw new BadCredentialsException("Bad credentials");
+                    }
+                    return new UsernamePasswordAuthenticationToken(authentication.getName(), null, List.of());
+                },
+                (request, response, e) -> response.sendError(HttpStatus.UNAUTHORIZED.value()),
+                new CredentialCache(new SimpleMeterRegistry(), 60_000, 100),
+                new AuthenticationThrottle(new SimpleMeterRegistry(), 1024, 2, 20, 60_000, 900_000));
+    }
+
+    // once the free failures are used up even the right password is turned away, before it is checked
+    @Test
+    public void answersRepeatedFailuresWithRetryAfter() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.UNAUTHORIZED.value(), signIn("alice", "guess" + i).getStatus());
+        }
+        assertEquals(3, checks.get());
+
+        MockHttpServletResponse throttled = signIn("alice", "secret");
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), throttled.getStatus());
+        assertEquals(AuthenticationThrottle.THROTTLED_MESSAGE, throttled.getErrorMessage());
+        assertEquals("60", throttled.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(3, checks.get());
+
+        // the address is still within its own free failures
+        assertEquals(HttpStatus.OK.value(), signIn("bob", "secret").getStatus());
+    }
+
+    private MockHttpServletResponse signIn(String username, String password) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/antifraud/history");
+        request.setRemoteAddr("10.6.0.1");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                .encodeToString((username + ':' + password).getBytes(StandardCharsets.UTF_8)));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        SecurityContextHolder.clearContext();
+        return response;
+    }
+}
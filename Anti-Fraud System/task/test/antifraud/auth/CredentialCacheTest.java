@@ -0,0 +1,61 @@
+package antifraud.auth;
+
+import antifraud.domain.UserRole;
+import antifraud.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.security.GeneralSecurityException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CredentialCacheTest {
+
+    private CredentialCache cache;
+
+    @Before
+    public void createCache() throws GeneralSecurityException {
+        cache = new CredentialCache(new SimpleMeterRegistry(), 60_000, 100);
+    }
+
+    // what another node changed only shows up in the polled versions
+    @Test
+    public void dropsLoginsOfUsersChangedOrDeletedElsewhere() {
+        put("Basic a", login("Alice", 1));
+        put("Basic b", login("bob", 1));
+        put("Basic c", login("carol", 1));
+
+        cache.retainCurrent(Map.of("alice", 1L, "bob", 2L));
+
+        assertNotNull(cache.get("Basic a"));
+        assertNull(cache.get("Basic b"));
+        assertNull(cache.get("Basic c"));
+    }
+
+    @Test
+    public void keepsNothingAfterAnInvalidationDuringTheCheck() {
+        final long generation = cache.generation();
+        cache.invalidate("alice");
+        cache.put("Basic a", login("alice", 1), generation);
+
+        assertNull(cache.get("Basic a"));
+    }
+
+    private void put(String authorization, Authentication authentication) {
+        cache.put(authorization, authentication, cache.generation());
+    }
+
+    private static Authentication login(String username, long tokenVersion) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("");
+        user.setRole(UserRole.ROLE_MERCHANT);
+        user.setTokenVersion(tokenVersion);
+        UserDetailsImpl details = new UserDetailsImpl(user);
+        return new UsernamePasswordAuthenticationToken(details, null, details.getAuthorities());
+    }
+}
@@ -0,0 +1,127 @@
+package antifraud.auth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class FailureSketchTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long BASE = 1_000;
+    private static final long MAX = 60_000;
+
+    @Test
+    public void doublesTheWaitPastTheFreeFailuresUpToTheMaximum() {
+        FailureSketch sketch = new FailureSketch(1024, 3, BASE, MAX);
+
+        for (int i = 0; i < 3; i++) {
+            sketch.recordFailure("alice", NOW);
+        }
+        assertEquals(0, sketch.blockedUntil("alice", NOW));
+
+        sketch.recordFailure("alice", NOW);
+        assertEquals(NOW + BASE, sketch.blockedUntil("alice", NOW));
+        sketch.recordFailure("alice", NOW);
+        assertEquals(NOW + 2 * BASE, sketch.blockedUntil("alice", NOW));
+        sketch.recordFailure("alice", NOW);
+        assertEquals(NOW + 4 * BASE, sketch.blockedUntil("alice", NOW));
+
+        for (int i = 0; i < 10; i++) {
+            sketch.recordFailure("alice", NOW);
+        }
+        assertEquals(NOW + MAX, sketch.blockedUntil("alice", NOW));
+        assertEquals(0, sketch.blockedUntil("alice", NOW + MAX));
+    }
+
+    @Test
+    public void forgetsFailuresOnceTheKeyStayedCleanForTheMaximumDelay() {
+        FailureSketch sketch = new FailureSketch(1024, 1, BASE, MAX);
+        sketch.recordFailure("alice", NOW);
+        sketch.recordFailure("alice", NOW);
+        sketch.recordFailure("alice", NOW);
+        assertEquals(NOW + 2 * BASE, sketch.blockedUntil("alice", NOW));
+
+        // the count starts over instead of adding to the old one
+        sketch.recordFailure("alice", NOW + MAX);
+        assertEquals(0, sketch.blockedUntil("alice", NOW + MAX));
+        sketch.recordFailure("alice", NOW + MAX);
+        assertEquals(NOW + MAX + BASE, sketch.blockedUntil("alice", NOW + MAX));
+    }
+
+    @Test
+    public void resetClearsTheKey() {
+        FailureSketch sketch = new FailureSketch(1024, 0, BASE, MAX);
+        sketch.recordFailure("alice", NOW);
+        assertTrue(sketch.blockedUntil("alice", NOW) > 0);
+
+        sketch.reset("alice");
+        assertEquals(0, sketch.blockedUntil("alice", NOW));
+        sketch.recordFailure("alice", NOW);
+        assertEquals(NOW + BASE, sketch.blockedUntil("alice", NOW));
+    }
+
+    // the count saturates instead of running into the time, and a late writer never moves the time back
+    @Test
+    public void keepsCountAndTimeApartInACell() {
+        FailureSketch sketch = new FailureSketch(1024, 0, 1, Long.MAX_VALUE >>> 8);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.recordFailure("alice", NOW);
+        }
+        sketch.recordFailure("alice", NOW - 500);
+
+        assertEquals(NOW + (1L << 30), sketch.blockedUntil("alice", NOW));
+    }
+
+    @Test
+    public void countsEveryConcurrentFailure() throws InterruptedException {
+        FailureSketch sketch = new FailureSketch(1, 0, 1, Long.MAX_VALUE >>> 8);
+        final int threads = 4;
+        final int failuresPerThread = 5;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < failuresPerThread; j++) {
+                    sketch.recordFailure("alice", NOW);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(NOW + (1L << (threads * failuresPerThread - 1)), sketch.blockedUntil("alice", NOW));
+    }
+
+    // two cells a row: a key shares some cell with the failing one nearly always, but all four only one time in 16
+    @Test
+    public void estimatesFromTheSmallestCell() {
+        FailureSketch sketch = new FailureSketch(2, 0, BASE, MAX);
+        sketch.recordFailure("mallory", NOW);
+        assertEquals(NOW + BASE, sketch.blockedUntil("mallory", NOW));
+
+        int blocked = 0;
+        for (int i = 0; i < 400; i++) {
+            final long until = sketch.blockedUntil("user" + i, NOW);
+            // a collision can only overstate the failures, so a blocked key waits exactly as long as mallory
+            assertTrue(until == 0 || until == NOW + BASE);
+            if (until > 0) {
+                blocked++;
+            }
+        }
+        assertTrue("blocked " + blocked, blocked > 0 && blocked < 100);
+    }
+}
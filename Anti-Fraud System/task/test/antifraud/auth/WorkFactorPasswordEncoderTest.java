@@ -0,0 +1,37 @@
+package antifraud.auth;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.junit.Assert.*;
+
+public class WorkFactorPasswordEncoderTest {
+
+    private final WorkFactorPasswordEncoder encoder = new WorkFactorPasswordEncoder(5);
+
+    @Test
+    public void upgradesHashesAtAnyOtherCost() {
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("secret")));
+        assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+    }
+
+    @Test
+    public void readsTheCostOfEveryBcryptVersion() {
+        final String hash = new BCryptPasswordEncoder(4).encode("secret").substring("$2a$".length());
+
+        assertTrue(encoder.upgradeEncoding("$2a$" + hash));
+        assertTrue(encoder.upgradeEncoding("$2b$" + hash));
+        assertTrue(encoder.upgradeEncoding("$2y$" + hash));
+        assertFalse(encoder.upgradeEncoding("$2b$" + encoder.encode("secret").substring("$2a$".length())));
+    }
+
+    // nothing to read a cost from, so nothing to upgrade
+    @Test
+    public void leavesOtherValuesAlone() {
+        assertFalse(encoder.upgradeEncoding(null));
+        assertFalse(encoder.upgradeEncoding(""));
+        assertFalse(encoder.upgradeEncoding("{noop}secret"));
+        assertFalse(encoder.upgradeEncoding("$2a$4$tooShort"));
+    }
+}
@@ -0,0 +1,134 @@
+package antifraud.bench;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static antifraud.bench.BenchmarkServer.*;
+import static org.junit.Assume.assumeTrue;
+
+// p50 and p99 of transaction scoring with cached credentials, first on an idle server and then while other clients
+// keep sending wrong passwords, each of which costs a BCrypt check. the bounded hashing pool is compared with one
+// large enough to hash every failed login at once, the way it was done on the request threads.
+// run with -Dantifraud.benchmark=true; -Dantifraud.benchmark.storm-clients and -Dantifraud.benchmark.requests change the load
+public class AuthStormBenchmark {
+
+    private static final String MERCHANT = "benchmark-merchant";
+    private static final String PASSWORD = "benchmark";
+    private static final int SCORING_CLIENTS = 4;
+
+    private final int stormClients = Integer.getInteger("antifraud.benchmark.storm-clients", 32);
+    private final int requestsPerClient = Integer.getInteger("antifraud.benchmark.requests", 200);
+
+    @Before
+    public void enabled() {
+        assumeTrue(Boolean.getBoolean(ENABLED));
+    }
+
+    @Test
+    public void boundedPool() throws Exception {
+        run("bounded", "antifraud.password-hashing.threads=2", "antifraud.password-hashing.queue-capacity=8");
+    }
+
+    @Test
+    public void unboundedPool() throws Exception {
+        run("unbounded", "antifraud.password-hashing.threads=64", "antifraud.password-hashing.queue-capacity=1000");
+    }
+
+    private void run(String mode, String threads, String queueCapacity) throws Exception {
+        // the throttle would turn the storm away before it reaches BCrypt, which is what is measured here
+        try (BenchmarkServer server = BenchmarkServer.start(threads, queueCapacity,
+                "antifraud.auth.cache-ttl-ms=3600000",
+                "antifraud.auth.throttle-free-failures-per-user=" + Integer.MAX_VALUE,
+                "antifraud.auth.throttle-free-failures-per-ip=" + Integer.MAX_VALUE)) {
+            server.createMerchant(MERCHANT, PASSWORD);
+            score(server, 1, 1);
+            score(server, SCORING_CLIENTS, requestsPerClient / 4);
+
+            long[] idle = score(server, SCORING_CLIENTS, requestsPerClient);
+
+            AtomicBoolean stopped = new AtomicBoolean();
+            Map<Integer, AtomicInteger> stormStatuses = new ConcurrentHashMap<>();
+            ExecutorService storm = Executors.newFixedThreadPool(stormClients);
+            HttpRequest wrongPassword = server.request("/api/antifraud/transaction")
+                    .header("Authorization", basic(MERCHANT, "wrong-" + PASSWORD))
+                    .POST(body("{}"))
+                    .build();
+            for (int c = 0; c < stormClients; c++) {
+                storm.submit(() -> {
+                    while (!stopped.get()) {
+                        int status = server.client().send(wrongPassword, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        stormStatuses.computeIfAbsent(status, key -> new AtomicInteger()).incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+
+            // until the hashing pool is saturated
+            Thread.sleep(1000);
+            long[] stormy = score(server, SCORING_CLIENTS, requestsPerClient);
+            stopped.set(true);
+            storm.shutdown();
+            storm.awaitTermination(1, TimeUnit.MINUTES);
+
+            System.out.printf("%-9s idle p50=%6dus p99=%7dus  storm p50=%6dus p99=%7dus  storm responses %s%n", mode,
+                    percentileMicros(idle, 0.50), percentileMicros(idle, 0.99),
+                    percentileMicros(stormy, 0.50), percentileMicros(stormy, 0.99), stormStatuses);
+        }
+    }
+
+    // sorted latencies of every request; each client scores its own card, one request after another
+    private long[] score(BenchmarkServer server, int clients, int requests) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<long[]>> results = new ArrayList<>(clients);
+        Map<Integer, AtomicInteger> errors = new ConcurrentHashMap<>();
+        String authorization = basic(MERCHANT, PASSWORD);
+
+        for (int c = 0; c < clients; c++) {
+            String number = cardNumber(c);
+            results.add(pool.submit(() -> {
+                long[] latencies = new long[requests];
+                for (int r = 0; r < requests; r++) {
+                    HttpRequest transaction = server.request("/api/antifraud/transaction")
+                            .header("Authorization", authorization)
+                            .POST(body(String.format("{\"amount\":100,\"ip\":\"10.0.0.1\",\"number\":\"%s\",\"region\":\"EAP\",\"date\":\"%s\"}",
+                                    number, LocalDateTime.of(2022, 1, 1, 0, 0).plusSeconds(r))))
+                            .build();
+                    long started = System.nanoTime();
+                    int status = server.client().send(transaction, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    latencies[r] = System.nanoTime() - started;
+                    if (status != 200) {
+                        errors.computeIfAbsent(status, key -> new AtomicInteger()).incrementAndGet();
+                    }
+                }
+                return latencies;
+            }));
+        }
+
+        List<long[]> latencies = new ArrayList<>(clients);
+        for (Future<long[]> result : results) {
+            latencies.add(result.get());
+        }
+        pool.shutdown();
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        if (!errors.isEmpty()) {
+            System.out.printf("failed requests of %d: %s%n", all.length, errors);
+        }
+        return all;
+    }
+}
@@ -0,0 +1,99 @@
+package antifraud.bench;
+
+import antifraud.AntiFraudApplication;
+import antifraud.util.AntiFraudUtil;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+// the application on a random port with its own in-memory database, so the benchmarks go through real connections,
+// the real thread model and the whole security chain
+final class BenchmarkServer implements AutoCloseable {
+
+    static final String ENABLED = "antifraud.benchmark";
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final ConfigurableApplicationContext context;
+    private final URI base;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private BenchmarkServer(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.base = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    static BenchmarkServer start(String... properties) {
+        List<String> all = new ArrayList<>(List.of(
+                "server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:benchmark-" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "server.tomcat.max-connections=20000",
+                "server.tomcat.accept-count=10000"));
+        all.addAll(Arrays.asList(properties));
+        // as arguments rather than default properties, so they win over application.properties
+        return new BenchmarkServer(new SpringApplicationBuilder(AntiFraudApplication.class)
+                .run(all.stream().map(property -> "--" + property).toArray(String[]::new)));
+    }
+
+    HttpClient client() {
+        return client;
+    }
+
+    HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).header("Content-Type", "application/json");
+    }
+
+    // the first user becomes the administrator, who unlocks the merchant
+    void createMerchant(String username, String password) throws IOException, InterruptedException {
+        send(request("/api/auth/user").POST(body("{\"name\":\"Admin\",\"username\":\"benchmark-admin\",\"password\":\"" + password + "\"}")), 201);
+        send(request("/api/auth/user").POST(body("{\"name\":\"Merchant\",\"username\":\"" + username + "\",\"password\":\"" + password + "\"}")), 201);
+        send(request("/api/auth/access")
+                .header("Authorization", basic("benchmark-admin", password))
+                .PUT(body("{\"username\":\"" + username + "\",\"operation\":\"UNLOCK\"}")), 200);
+    }
+
+    private void send(HttpRequest.Builder request, int expectedStatus) throws IOException, InterruptedException {
+        assertEquals(expectedStatus, client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    static HttpRequest.BodyPublisher body(String json) {
+        return HttpRequest.BodyPublishers.ofString(json);
+    }
+
+    static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // a valid card number of its own for every seed
+    static String cardNumber(int seed) {
+        String prefix = String.format("400000%09d", seed);
+        for (int check = 0; ; check++) {
+            if (AntiFraudUtil.isValidNumber().test(prefix + check)) {
+                return prefix + check;
+            }
+        }
+    }
+
+    static long percentileMicros(long[] sortedNanos, double percentile) {
+        return sortedNanos[Math.min(sortedNanos.length - 1, (int) (sortedNanos.length * percentile))] / 1000;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,109 @@
+package antifraud.bench;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static antifraud.bench.BenchmarkServer.*;
+import static org.junit.Assume.assumeTrue;
+
+// throughput and p99 of transaction scoring with 1k, 5k and 10k concurrent clients, on the platform-thread pool and
+// on virtual threads; each client sends its requests one after another on its own connection.
+// run with -Dantifraud.benchmark=true, the client counts can be changed with -Dantifraud.benchmark.clients=1000,5000
+public class ThreadModelBenchmark {
+
+    private static final String PASSWORD = "benchmark";
+
+    private final int requestsPerClient = Integer.getInteger("antifraud.benchmark.requests", 20);
+    private final int[] clientCounts = Arrays.stream(System.getProperty("antifraud.benchmark.clients", "1000,5000,10000")
+            .split(",")).mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+
+    @Before
+    public void enabled() {
+        assumeTrue(Boolean.getBoolean(ENABLED));
+    }
+
+    @Test
+    public void platformThreads() throws Exception {
+        run("platform", "antifraud.virtual-threads.enabled=false");
+    }
+
+    @Test
+    public void virtualThreads() throws Exception {
+        assumeTrue("virtual threads need Java 21", Runtime.version().feature() >= 21);
+        run("virtual", "antifraud.virtual-threads.enabled=true");
+    }
+
+    private void run(String mode, String property) throws Exception {
+        // one password check for the whole run: the credential cache answers every request after the first, so the
+        // numbers are about the thread model rather than about BCrypt
+        try (BenchmarkServer server = BenchmarkServer.start(property, "antifraud.auth.cache-ttl-ms=3600000")) {
+            server.createMerchant("benchmark-merchant", PASSWORD);
+            // a single client first, so the cache is filled before anything runs concurrently; then the JIT warms up
+            load(server, 1, 0);
+            load(server, 100, 1);
+
+            for (int clients : clientCounts) {
+                long started = System.nanoTime();
+                long[] latencies = load(server, clients, clients);
+                double seconds = (System.nanoTime() - started) / 1e9;
+
+                System.out.printf("%-8s clients=%-6d requests=%-7d throughput=%8.0f/s p50=%6dus p99=%7dus%n",
+                        mode, clients, latencies.length, latencies.length / seconds,
+                        percentileMicros(latencies, 0.50), percentileMicros(latencies, 0.99));
+            }
+        }
+    }
+
+    // sorted latencies of every request, failed ones included
+    private long[] load(BenchmarkServer server, int clients, int firstCard) {
+        HttpClient client = server.client();
+        String authorization = basic("benchmark-merchant", PASSWORD);
+        Map<String, AtomicInteger> errors = new ConcurrentHashMap<>();
+        List<CompletableFuture<long[]>> results = new ArrayList<>(clients);
+
+        for (int c = 0; c < clients; c++) {
+            String number = cardNumber(firstCard + c);
+            long[] latencies = new long[requestsPerClient];
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+
+            for (int r = 0; r < requestsPerClient; r++) {
+                final int request = r;
+                HttpRequest transaction = server.request("/api/antifraud/transaction")
+                        .header("Authorization", authorization)
+                        .POST(body(String.format("{\"amount\":100,\"ip\":\"10.0.%d.%d\",\"number\":\"%s\",\"region\":\"EAP\","
+                                + "\"date\":\"%s\"}", c % 256, r, number, LocalDateTime.of(2022, 1, 1, 0, 0).plusMinutes(r))))
+                        .build();
+                chain = chain.thenCompose(previous -> {
+                    long started = System.nanoTime();
+                    return client.sendAsync(transaction, HttpResponse.BodyHandlers.discarding()).handle((response, failure) -> {
+                        if (failure != null || response.statusCode() != 200) {
+                            String error = failure != null ? failure.getClass().getSimpleName() : String.valueOf(response.statusCode());
+                            errors.computeIfAbsent(error, key -> new AtomicInteger()).incrementAndGet();
+                        }
+                        latencies[request] = System.nanoTime() - started;
+                        return null;
+                    });
+                });
+            }
+            results.add(chain.thenApply(done -> latencies));
+        }
+
+        long[] all = results.stream().map(CompletableFuture::join).flatMapToLong(Arrays::stream).sorted().toArray();
+        if (!errors.isEmpty()) {
+            System.out.printf("failed requests of %d: %s%n", all.length, errors);
+        }
+        return all;
+    }
+}
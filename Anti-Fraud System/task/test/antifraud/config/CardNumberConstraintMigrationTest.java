@@ -0,0 +1,50 @@
+package antifraud.config;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class CardNumberConstraintMigrationTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    // the table as hibernate left it when the constraint could not be added
+    @Before
+    public void createTableWithoutConstraint() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE card (card_id BIGINT PRIMARY KEY, number VARCHAR(255), max_allowed BIGINT, max_manual BIGINT, version BIGINT)");
+    }
+
+    @Test
+    public void keepsTheOldestRowOfEachNumber() {
+        jdbcTemplate.update("INSERT INTO card VALUES (1, '4000008449433403', 200, 1500, 0), (2, '4000008449433403', 200, 1500, 0), "
+                + "(3, '4000003305160034', 200, 1500, 0), (4, '4000008449433403', 200, 1500, 0)");
+
+        new CardNumberConstraintMigration(jdbcTemplate).migrate();
+
+        assertEquals(List.of(1L, 3L), jdbcTemplate.queryForList("SELECT card_id FROM card ORDER BY card_id", Long.class));
+        assertThrows(DuplicateKeyException.class,
+                () -> jdbcTemplate.update("INSERT INTO card VALUES (5, '4000003305160034', 200, 1500, 0)"));
+
+        // a second start finds the constraint in place
+        new CardNumberConstraintMigration(jdbcTemplate).migrate();
+        assertEquals(2, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM card", Integer.class));
+    }
+
+    @Test
+    public void leavesAFreshDatabaseToHibernate() {
+        jdbcTemplate.execute("DROP TABLE card");
+
+        new CardNumberConstraintMigration(jdbcTemplate).migrate();
+
+        assertEquals(0, (int) jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'CARD'", Integer.class));
+    }
+}
@@ -0,0 +1,56 @@
+package antifraud.config;
+
+import antifraud.ip.IpAddress;
+import antifraud.ip.IpRange;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class IpColumnMigrationTest {
+
+    private JdbcTemplate jdbcTemplate;
+
+    // the layout from before the binary ip columns
+    @Before
+    public void createTextColumns() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE transactions (id BIGINT PRIMARY KEY, number VARCHAR(255), date TIMESTAMP, ip VARCHAR(255), region VARCHAR(255))");
+        jdbcTemplate.execute("CREATE INDEX idx_transactions_number_date_ip_region ON transactions (number, date, ip, region)");
+        jdbcTemplate.execute("CREATE TABLE addresses (address_id BIGINT PRIMARY KEY, ip VARCHAR(255) UNIQUE, expires_at TIMESTAMP)");
+    }
+
+    @Test
+    public void movesTheTextFormsToBinaryColumns() {
+        jdbcTemplate.update("INSERT INTO transactions (id, number, ip) VALUES (1, '4000008449433403', '192.168.1.1'), (2, '4000008449433403', '2001:DB8::1'), (3, '4000008449433403', NULL)");
+        jdbcTemplate.update("INSERT INTO addresses (address_id, ip) VALUES (1, '10.0.0.1'), (2, '172.16.0.0/12')");
+
+        new IpColumnMigration(jdbcTemplate, 1).migrate();
+
+        assertEquals(List.of("192.168.1.1", "2001:db8::1"), jdbcTemplate.query("SELECT ip FROM transactions WHERE ip IS NOT NULL ORDER BY id",
+                (row, i) -> IpAddress.fromBytes(row.getBytes(1)).toString()));
+        assertEquals(List.of("10.0.0.1", "172.16.0.0/12"), jdbcTemplate.query("SELECT ip FROM addresses ORDER BY address_id",
+                (row, i) -> IpRange.fromBytes(row.getBytes(1)).toString()));
+
+        assertThrows(DuplicateKeyException.class,
+                () -> jdbcTemplate.update("INSERT INTO addresses (address_id, ip) SELECT 3, ip FROM addresses WHERE address_id = 1"));
+
+        // a second start finds nothing left to do
+        new IpColumnMigration(jdbcTemplate, 1).migrate();
+        assertEquals(3, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions", Integer.class));
+    }
+
+    @Test
+    public void stopsOnAValueThatDoesNotParse() {
+        jdbcTemplate.update("INSERT INTO addresses (address_id, ip) VALUES (7, '10.0.0.300')");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> new IpColumnMigration(jdbcTemplate, 10).migrate());
+        assertTrue(e.getMessage(), e.getMessage().contains("addresses row 7"));
+    }
+}
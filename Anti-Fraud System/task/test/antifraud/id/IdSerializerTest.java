@@ -0,0 +1,42 @@
+package antifraud.id;
+
+import antifraud.domain.Region;
+import antifraud.model.Transaction;
+import antifraud.rest.FeedbackUpdateRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+public class IdSerializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    public void writesTimeOrderedIdsAsStrings() throws Exception {
+        final long id = TimeOrderedIds.forNode(0).next();
+
+        JsonNode written = objectMapper.valueToTree(transaction(id));
+
+        assertTrue(written.get("transactionId").isTextual());
+        assertEquals(id, (long) objectMapper.readValue("{\"transactionId\":\"" + id + "\",\"feedback\":\"ALLOWED\"}",
+                FeedbackUpdateRequest.class).getTransactionId());
+    }
+
+    @Test
+    public void keepsSequenceIdsNumbers() {
+        assertTrue(objectMapper.valueToTree(transaction(42L)).get("transactionId").isNumber());
+        assertTrue(objectMapper.valueToTree(transaction((1L << 53) - 1)).get("transactionId").isNumber());
+        assertTrue(objectMapper.valueToTree(transaction(1L << 53)).get("transactionId").isTextual());
+    }
+
+    private static Transaction transaction(long id) {
+        Transaction transaction = new Transaction(100L, "10.0.0.1", "4000008449433403", Region.EAP, LocalDateTime.of(2030, 1, 1, 10, 0));
+        transaction.setId(id);
+        return transaction;
+    }
+}
@@ -0,0 +1,93 @@
+package antifraud.index;
+
+import antifraud.AntiFraudApplication;
+import antifraud.domain.Blacklist;
+import antifraud.model.Address;
+import antifraud.model.StolenCard;
+import antifraud.service.StolenCardService;
+import antifraud.service.SuspiciousIpService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+// the wheel turns an hour a tick and the scheduled purge waits as long, so only the explicit calls below take entries out
+public class BlacklistIndexExpiryTest {
+
+    private static final String EXPIRING = "4000008449433403";
+    private static final String REMOVED = "4000008449433411";
+    private static final String RENEWED = "4000008449433429";
+    private static final String PERMANENT = "4000008449433437";
+
+    private ConfigurableApplicationContext context;
+    private BlacklistIndex index;
+    private StolenCardService stolenCardService;
+
+    @Before
+    public void startNode() {
+        context = new SpringApplicationBuilder(AntiFraudApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:expiry-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=update",
+                "--spring.jmx.enabled=false",
+                "--antifraud.blacklist.expiry-interval-ms=" + Duration.ofHours(1).toMillis());
+        index = context.getBean(BlacklistIndex.class);
+        stolenCardService = context.getBean(StolenCardService.class);
+    }
+
+    @After
+    public void stopNode() {
+        context.close();
+    }
+
+    @Test
+    public void leavesOutEntriesRemovedOrRenewedSinceTheyWereScheduled() throws InterruptedException {
+        final LocalDateTime now = LocalDateTime.now();
+        stolenCardService.create(card(EXPIRING, now.plusMinutes(1)));
+        stolenCardService.create(card(REMOVED, now.plusMinutes(1)));
+        stolenCardService.removeByNumber(REMOVED);
+        // only an expired card is renewed, its first deadline stays scheduled in the wheel
+        stolenCardService.create(card(RENEWED, now.plusSeconds(1)));
+        while (!LocalDateTime.now().isAfter(now.plusSeconds(1))) {
+            Thread.sleep(50);
+        }
+        stolenCardService.create(card(RENEWED, now.plusDays(1)));
+        stolenCardService.create(card(PERMANENT, null));
+
+        final long afterFirstDeadlines = BlacklistSnapshot.deadlineOf(now.plusHours(2));
+        assertEquals(List.of(EXPIRING), index.expired(Blacklist.STOLEN_CARD, afterFirstDeadlines));
+        // every entry is handed out once
+        assertEquals(List.of(), index.expired(Blacklist.STOLEN_CARD, afterFirstDeadlines));
+
+        assertEquals(List.of(RENEWED), index.expired(Blacklist.STOLEN_CARD, BlacklistSnapshot.deadlineOf(now.plusDays(2))));
+    }
+
+    @Test
+    public void keepsTheListsApart() {
+        final LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(1);
+        Address address = new Address();
+        address.setIp("10.0.0.0/8");
+        address.setExpiresAt(expiresAt);
+        context.getBean(SuspiciousIpService.class).create(address);
+        stolenCardService.create(card(EXPIRING, expiresAt));
+
+        final long later = BlacklistSnapshot.deadlineOf(expiresAt.plusHours(2));
+        assertEquals(List.of("10.0.0.0/8"), index.expired(Blacklist.SUSPICIOUS_IP, later));
+        assertEquals(List.of(EXPIRING), index.expired(Blacklist.STOLEN_CARD, later));
+    }
+
+    private static StolenCard card(String number, LocalDateTime expiresAt) {
+        StolenCard card = new StolenCard();
+        card.setNumber(number);
+        card.setExpiresAt(expiresAt);
+        return card;
+    }
+}
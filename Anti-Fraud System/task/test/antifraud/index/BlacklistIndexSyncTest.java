@@ -0,0 +1,110 @@
+package antifraud.index;
+
+import antifraud.AntiFraudApplication;
+import antifraud.model.Address;
+import antifraud.model.BlacklistChange;
+import antifraud.model.StolenCard;
+import antifraud.service.BlacklistChangeService;
+import antifraud.service.StolenCardService;
+import antifraud.service.SuspiciousIpService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+// two nodes on one database; the scheduled sync is pushed out of the way, so only the explicit syncs move the second node
+public class BlacklistIndexSyncTest {
+
+    private static final String NUMBER = "4000008449433403";
+
+    private String database;
+    private ConfigurableApplicationContext first;
+    private ConfigurableApplicationContext second;
+
+    @Before
+    public void startNodes() {
+        database = "jdbc:h2:mem:sync-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        first = node();
+        second = node();
+    }
+
+    @After
+    public void stopNodes() {
+        second.close();
+        first.close();
+    }
+
+    @Test
+    public void changesMadeOnOneNodeReachTheOther() {
+        BlacklistIndex index = second.getBean(BlacklistIndex.class);
+
+        StolenCard card = new StolenCard();
+        card.setNumber(NUMBER);
+        first.getBean(StolenCardService.class).create(card);
+        Address address = new Address();
+        address.setIp("10.0.0.0/8");
+        first.getBean(SuspiciousIpService.class).create(address);
+        assertFalse(index.isStolen(NUMBER));
+
+        index.sync();
+        assertTrue(index.isStolen(NUMBER));
+        assertTrue(index.isSuspicious("10.2.3.4"));
+        assertEquals(2, index.snapshot().getVersion());
+
+        first.getBean(StolenCardService.class).removeByNumber(NUMBER);
+        index.sync();
+        assertFalse(index.isStolen(NUMBER));
+        assertEquals(3, index.snapshot().getVersion());
+
+        // a node started now loads the same state
+        ConfigurableApplicationContext third = node();
+        try {
+            assertEquals(3, third.getBean(BlacklistIndex.class).snapshot().getVersion());
+            assertTrue(third.getBean(BlacklistIndex.class).isSuspicious("10.2.3.4"));
+            assertFalse(third.getBean(BlacklistIndex.class).isStolen(NUMBER));
+        } finally {
+            third.close();
+        }
+    }
+
+    // every change is handed out once, in version order, whatever the page size
+    @Test
+    public void changesArePagedBySince() {
+        for (int i = 0; i < 7; i++) {
+            Address address = new Address();
+            address.setIp("10.0.0." + i);
+            first.getBean(SuspiciousIpService.class).create(address);
+        }
+
+        BlacklistChangeService changes = second.getBean(BlacklistChangeService.class);
+        List<Long> versions = new ArrayList<>();
+        long since = 0;
+        List<BlacklistChange> page;
+        while (!(page = changes.findSince(since, 3)).isEmpty()) {
+            assertTrue(page.size() <= 3);
+            page.forEach(change -> versions.add(change.getVersion()));
+            since = page.get(page.size() - 1).getVersion();
+        }
+
+        assertEquals(LongStream.rangeClosed(1, 7).boxed().collect(Collectors.toList()), versions);
+        assertEquals("10.0.0.4", changes.findSince(4, 1).get(0).getValue());
+    }
+
+    private ConfigurableApplicationContext node() {
+        return new SpringApplicationBuilder(AntiFraudApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + database,
+                "--spring.jpa.hibernate.ddl-auto=update",
+                "--spring.jmx.enabled=false",
+                "--antifraud.blacklist.sync-interval-ms=3600000");
+    }
+}
@@ -0,0 +1,84 @@
+package antifraud.index;
+
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import antifraud.domain.BlacklistEntry;
+import antifraud.model.BlacklistChange;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BlacklistSnapshotTest {
+
+    @Test
+    public void removedNumbersStopMatchingWithoutChangingThePreviousSnapshot() {
+        BlacklistSnapshot first = BlacklistSnapshot.of(1,
+                List.of(new BlacklistEntry("4000008449433403", null), new BlacklistEntry("4000003305061034", null)), List.of());
+
+        BlacklistSnapshot second = first.withChanges(List.of(
+                change(2, BlacklistAction.REMOVE, "4000008449433403", null),
+                change(3, BlacklistAction.ADD, "4000002128938011", null),
+                change(4, BlacklistAction.REMOVE, "4000009999999993", null)));
+
+        long now = System.currentTimeMillis();
+        assertFalse(second.isStolen("4000008449433403", now));
+        assertTrue(second.isStolen("4000003305061034", now));
+        assertTrue(second.isStolen("4000002128938011", now));
+        assertEquals(2, second.getStolenCardCount());
+        assertEquals(4, second.getVersion());
+
+        assertTrue(first.isStolen("4000008449433403", now));
+        assertFalse(first.isStolen("4000002128938011", now));
+        assertEquals(2, first.getStolenCardCount());
+    }
+
+    // enough changes to fold the overlay into the base several times over
+    @Test
+    public void agreesWithAMapAcrossCompactions() {
+        Random random = new Random(42);
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(1);
+        long deadline = BlacklistSnapshot.deadlineOf(expiresAt);
+        Map<String, Long> expected = new HashMap<>();
+        List<BlacklistEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String number = String.valueOf(4_000_000_000_000_000L + i);
+            entries.add(new BlacklistEntry(number, null));
+            expected.put(number, Long.MAX_VALUE);
+        }
+
+        BlacklistSnapshot snapshot = BlacklistSnapshot.of(1, entries, List.of());
+        long version = 1;
+        for (int sync = 0; sync < 200; sync++) {
+            List<BlacklistChange> changes = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String number = String.valueOf(4_000_000_000_000_000L + random.nextInt(20_000));
+                if (random.nextBoolean()) {
+                    boolean expires = random.nextBoolean();
+                    changes.add(change(++version, BlacklistAction.ADD, number, expires ? expiresAt : null));
+                    expected.put(number, expires ? deadline : Long.MAX_VALUE);
+                } else {
+                    changes.add(change(++version, BlacklistAction.REMOVE, number, null));
+                    expected.remove(number);
+                }
+            }
+            snapshot = snapshot.withChanges(changes);
+            assertEquals(expected.size(), snapshot.getStolenCardCount());
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            String number = String.valueOf(4_000_000_000_000_000L + i);
+            assertEquals(number, (long) expected.getOrDefault(number, 0L), snapshot.deadlineOf(Blacklist.STOLEN_CARD, number));
+        }
+    }
+
+    private static BlacklistChange change(long version, BlacklistAction action, String value, LocalDateTime expiresAt) {
+        return new BlacklistChange(version, Blacklist.STOLEN_CARD, action, value, expiresAt, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,61 @@
+package antifraud.index;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static antifraud.index.ExpiringLongSet.NEVER;
+import static org.junit.Assert.*;
+
+public class ExpiringLongSetTest {
+
+    @Test
+    public void aKeyAddedAgainTakesTheNewDeadline() {
+        ExpiringLongSet set = new ExpiringLongSet(0);
+
+        set.add(7, 1_000);
+        assertTrue(set.contains(7, 999));
+        assertFalse(set.contains(7, 1_000));
+
+        set.add(7, NEVER);
+        assertEquals(NEVER, set.deadlineOf(7));
+        set.add(7, 2_000);
+        assertEquals(2_000, set.deadlineOf(7));
+        assertEquals(1, set.size());
+
+        set.remove(7);
+        assertEquals(0, set.deadlineOf(7));
+        assertEquals(0, set.size());
+    }
+
+    // removals and re-adds across many rehashes of both tables, some keys with deadlines and most without
+    @Test
+    public void agreesWithAMap() {
+        Random random = new Random(7);
+        ExpiringLongSet set = new ExpiringLongSet(0);
+        Map<Long, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            final long key = 1 + random.nextInt(50_000);
+            if (random.nextInt(3) == 0) {
+                set.remove(key);
+                expected.remove(key);
+            } else {
+                final long deadline = random.nextInt(10) == 0 ? 1 + random.nextInt(1_000_000) : NEVER;
+                set.add(key, deadline);
+                expected.put(key, deadline);
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        for (long key = 1; key <= 50_000; key++) {
+            assertEquals(expected.getOrDefault(key, 0L).longValue(), set.deadlineOf(key));
+        }
+
+        Map<Long, Long> visited = new HashMap<>();
+        set.copy().forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+}
@@ -0,0 +1,129 @@
+package antifraud.index;
+
+import antifraud.ip.IpAddress;
+import antifraud.ip.IpRange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IpRangeTrieTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Test
+    public void matchesOnlyTheAddedRanges() {
+        IpRangeTrie trie = new IpRangeTrie();
+        add(trie, "10.0.0.1");
+        add(trie, "192.168.1.1");
+        add(trie, "172.16.0.0/12");
+        add(trie, "2001:db8::/32");
+
+        assertTrue(matches(trie, "10.0.0.1"));
+        assertTrue(matches(trie, "192.168.1.1"));
+        assertTrue(matches(trie, "172.31.255.255"));
+        assertTrue(matches(trie, "2001:db8::1"));
+        assertFalse(matches(trie, "203.0.113.7"));
+        assertFalse(matches(trie, "10.0.0.2"));
+        assertFalse(matches(trie, "172.32.0.0"));
+        assertFalse(matches(trie, "2001:db9::1"));
+        assertEquals(4, trie.size());
+    }
+
+    // enough ranges to grow the node arrays several times over
+    @Test
+    public void agreesWithALinearScanAfterGrowing() {
+        Random random = new Random(42);
+        IpRangeTrie trie = new IpRangeTrie();
+        List<IpRange> ranges = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            IpRange range = randomIpv4Range(random);
+            ranges.add(range);
+            trie.add(range.getAddress(), range.getPrefixLength(), NEVER);
+        }
+
+        for (IpRange range : ranges) {
+            assertTrue(range.toString(), trie.matches(range.getAddress(), 0));
+        }
+        for (int i = 0; i < 20_000; i++) {
+            IpAddress address = new IpAddress(0, 0xffff00000000L | (random.nextInt() & 0xffffffffL));
+            assertEquals(address.toString(), linearMatch(ranges, address), trie.matches(address, 0));
+        }
+    }
+
+    @Test
+    public void removeKeepsTheOtherRanges() {
+        IpRangeTrie trie = new IpRangeTrie();
+        add(trie, "10.0.0.0/8");
+        add(trie, "10.1.0.0/16");
+        add(trie, "10.1.2.3");
+
+        IpRange range = IpRange.parse("10.0.0.0/8");
+        assertTrue(trie.remove(range.getAddress(), range.getPrefixLength()));
+        assertFalse(trie.remove(range.getAddress(), range.getPrefixLength()));
+
+        assertTrue(matches(trie, "10.1.2.3"));
+        assertTrue(matches(trie, "10.1.9.9"));
+        assertFalse(matches(trie, "10.2.0.0"));
+        assertEquals(2, trie.size());
+    }
+
+    @Test
+    public void expiredRangeStopsMatching() {
+        IpRangeTrie trie = new IpRangeTrie();
+        IpRange wide = IpRange.parse("10.0.0.0/8");
+        IpRange narrow = IpRange.parse("10.1.0.0/16");
+        trie.add(wide.getAddress(), wide.getPrefixLength(), 100);
+        trie.add(narrow.getAddress(), narrow.getPrefixLength(), 200);
+
+        assertTrue(matches(trie, "10.2.0.0", 99));
+        assertFalse(matches(trie, "10.2.0.0", 100));
+        assertTrue(matches(trie, "10.1.0.1", 150));
+        assertFalse(matches(trie, "10.1.0.1", 200));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        IpRangeTrie trie = new IpRangeTrie();
+        add(trie, "10.0.0.1");
+        IpRangeTrie copy = trie.copy();
+        add(copy, "10.0.0.2");
+
+        assertFalse(matches(trie, "10.0.0.2"));
+        assertTrue(matches(copy, "10.0.0.2"));
+        assertTrue(matches(copy, "10.0.0.1"));
+    }
+
+    private static IpRange randomIpv4Range(Random random) {
+        final int prefix = 8 + random.nextInt(25);
+        final long bits = random.nextInt() & 0xffffffffL & (0xffffffffL << (32 - prefix));
+        return new IpRange(new IpAddress(0, 0xffff00000000L | bits), IpAddress.IPV4_OFFSET + prefix);
+    }
+
+    private static boolean linearMatch(List<IpRange> ranges, IpAddress address) {
+        for (IpRange range : ranges) {
+            final int prefix = range.getPrefixLength() - IpAddress.IPV4_OFFSET;
+            final long mask = 0xffffffffL << (32 - prefix) & 0xffffffffL;
+            if (((range.getAddress().getLow() ^ address.getLow()) & mask) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void add(IpRangeTrie trie, String text) {
+        IpRange range = IpRange.parse(text);
+        trie.add(range.getAddress(), range.getPrefixLength(), NEVER);
+    }
+
+    private static boolean matches(IpRangeTrie trie, String address) {
+        return matches(trie, address, 0);
+    }
+
+    private static boolean matches(IpRangeTrie trie, String address, long now) {
+        return trie.matches(IpAddress.parse(address), now);
+    }
+}
@@ -0,0 +1,90 @@
+package antifraud.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 1_000;
+    private static final long SLOTS = 64;
+    // 64^4, one tick more than the top level reaches
+    private static final long TOP = SLOTS * SLOTS * SLOTS * SLOTS;
+
+    @Test
+    public void comesOutOnTheTickOfItsDeadline() {
+        for (long ticks : new long[]{1, 2, 63}) {
+            assertComesOutAfter(0, ticks);
+        }
+    }
+
+    // the last delay of a level, the first of the next one and exactly 64^n ticks
+    @Test
+    public void cascadesAcrossLevelBoundaries() {
+        for (long ticks : new long[]{SLOTS - 1, SLOTS, SLOTS + 1, SLOTS * SLOTS - 1, SLOTS * SLOTS, SLOTS * SLOTS + 1,
+                SLOTS * SLOTS * SLOTS - 1, SLOTS * SLOTS * SLOTS, SLOTS * SLOTS * SLOTS + 1}) {
+            assertComesOutAfter(0, ticks);
+            // a wheel started in the middle of every level's bucket
+            assertComesOutAfter(SLOTS * SLOTS * SLOTS - 37, ticks);
+        }
+    }
+
+    // past the top level an entry waits in its last bucket and is placed again when that comes round
+    @Test
+    public void placesDelaysBeyondTheTopLevelAgain() {
+        for (long ticks : new long[]{TOP - 1, TOP, TOP + 5, 2 * TOP + SLOTS}) {
+            assertComesOutAfter(12_345, ticks);
+        }
+    }
+
+    @Test
+    public void roundsDeadlinesUpToAWholeTick() {
+        TimingWheel wheel = new TimingWheel(TICK, 10 * TICK + 400);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("between", 12 * TICK + 1);
+        wheel.schedule("due", 5 * TICK);
+
+        wheel.advance(11 * TICK - 1, expired::add);
+        assertEquals(List.of(), expired);
+        wheel.advance(11 * TICK, expired::add);
+        assertEquals(List.of("due"), expired);
+        wheel.advance(13 * TICK - 1, expired::add);
+        assertEquals(List.of("due"), expired);
+        wheel.advance(13 * TICK, expired::add);
+        assertEquals(List.of("due", "between"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    // the wheel hands out every schedule of an entry; telling a renewed one from an expired one is up to the caller
+    @Test
+    public void handsOutEachScheduleOfARenewedEntry() {
+        TimingWheel wheel = new TimingWheel(TICK, 0);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("renewed", 10 * TICK);
+        wheel.schedule("renewed", SLOTS * SLOTS * TICK);
+        assertEquals(2, wheel.size());
+
+        wheel.advance(10 * TICK, expired::add);
+        assertEquals(List.of("renewed"), expired);
+        assertEquals(1, wheel.size());
+        wheel.advance(SLOTS * SLOTS * TICK - 1, expired::add);
+        assertEquals(1, expired.size());
+        wheel.advance(SLOTS * SLOTS * TICK, expired::add);
+        assertEquals(List.of("renewed", "renewed"), expired);
+    }
+
+    private static void assertComesOutAfter(long startTick, long ticks) {
+        TimingWheel wheel = new TimingWheel(TICK, startTick * TICK);
+        List<String> expired = new ArrayList<>();
+        wheel.schedule("entry", (startTick + ticks) * TICK);
+
+        wheel.advance((startTick + ticks) * TICK - 1, expired::add);
+        assertEquals("early after " + ticks + " ticks", List.of(), expired);
+        wheel.advance((startTick + ticks) * TICK, expired::add);
+        assertEquals("late after " + ticks + " ticks", List.of("entry"), expired);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,57 @@
+package antifraud.index;
+
+import antifraud.domain.Region;
+import antifraud.domain.TransactionCorrelation;
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionRepository;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class TransactionWindowIndexTest {
+
+    private static final String NUMBER = "4000008449433403";
+
+    @Test
+    public void aDateFarAheadDoesNotEvictTheCurrentWindow() {
+        TransactionWindowIndex index = loaded(1);
+        final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+        index.record(new Transaction(100L, "10.0.0.1", NUMBER, Region.EAP, now.plusYears(10)));
+        index.record(new Transaction(100L, "10.0.0.2", NUMBER, Region.EAP, now.minusMinutes(1)));
+
+        assertEquals(Optional.of(new TransactionCorrelation(0L, 1L)), index.correlate(NUMBER, "10.0.0.3", Region.EAP, now));
+    }
+
+    // every node has to see the transactions scored on the others, which only the database holds
+    @Test
+    public void leavesCorrelationsToTheDatabaseWithSeveralNodes() {
+        TransactionWindowIndex index = loaded(2);
+        final LocalDateTime now = LocalDateTime.now();
+
+        index.record(new Transaction(100L, "10.0.0.1", NUMBER, Region.EAP, now.minusMinutes(1)));
+
+        assertEquals(Optional.empty(), index.correlate(NUMBER, "10.0.0.2", Region.EAP, now));
+        assertEquals(Optional.empty(), index.correlate(NUMBER, "10.0.0.2", Region.EAP, now, List.of()));
+    }
+
+    // over an empty database
+    private static TransactionWindowIndex loaded(int expectedNodes) {
+        TransactionRepository repository = (TransactionRepository) Proxy.newProxyInstance(TransactionRepository.class.getClassLoader(),
+                new Class<?>[]{TransactionRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findTopByOrderByDateDesc")) {
+                        return Optional.empty();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        TransactionWindowIndex index = new TransactionWindowIndex(repository, expectedNodes);
+        index.load();
+        return index;
+    }
+}
@@ -0,0 +1,57 @@
+package antifraud.ip;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IpAddressTest {
+
+    @Test
+    public void parsesTheCompressedForms() {
+        assertEquals(new IpAddress(0, 0), IpAddress.parse("::"));
+        assertEquals(new IpAddress(0, 1), IpAddress.parse("::1"));
+        assertEquals(new IpAddress(0x20010db800000000L, 0), IpAddress.parse("2001:db8::"));
+        assertEquals(IpAddress.parse("2001:db8:0:0:1:0:0:1"), IpAddress.parse("2001:DB8::1:0:0:1"));
+        assertEquals(IpAddress.parse("1:2:3:4:5:6:7:8"), IpAddress.parse("0001:0002:0003:0004:0005:0006:0007:0008"));
+    }
+
+    @Test
+    public void readsAnEmbeddedDottedQuad() {
+        assertEquals(IpAddress.parse("10.0.0.1"), IpAddress.parse("::ffff:10.0.0.1"));
+        assertEquals(IpAddress.parse("::ffff:a00:1"), IpAddress.parse("::ffff:10.0.0.1"));
+        assertEquals(IpAddress.parse("64:ff9b::c000:221"), IpAddress.parse("64:ff9b::192.0.2.33"));
+        assertEquals(IpAddress.parse("1:2:3:4:5:6:7f00:1"), IpAddress.parse("1:2:3:4:5:6:127.0.0.1"));
+        assertTrue(IpAddress.parse("::ffff:10.0.0.1").isIpv4());
+        assertFalse(IpAddress.parse("::10.0.0.1").isIpv4());
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        for (String text : new String[]{"", ":", ":::", "1::2::3", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "::1:", ":1::",
+                "12345::", "g::", "1:2:3:4:5:6:7:1.2.3.4", "::1.2.3", "::1.2.3.256", "01.2.3.4", "1.2.3.4.5", "1.2.3", " 1.2.3.4"}) {
+            assertFalse(text, IpAddress.isValid(text));
+        }
+    }
+
+    // RFC 5952: lower case, no leading zeros, the longest zero run (the first one on a tie) as ::, never for a single group
+    @Test
+    public void printsTheCanonicalForm() {
+        assertEquals("::", IpAddress.parse("0:0:0:0:0:0:0:0").toString());
+        assertEquals("::1", IpAddress.parse("0:0:0:0:0:0:0:1").toString());
+        assertEquals("2001:db8::1", IpAddress.parse("2001:0DB8:0000:0000:0000:0000:0000:0001").toString());
+        assertEquals("2001:db8:0:1:1:1:1:1", IpAddress.parse("2001:db8::1:1:1:1:1").toString());
+        assertEquals("2001:0:0:1::1", IpAddress.parse("2001:0:0:1:0:0:0:1").toString());
+        assertEquals("2001:db8::1:0:0:1", IpAddress.parse("2001:db8:0:0:1:0:0:1").toString());
+        assertEquals("1::", IpAddress.parse("1:0:0:0:0:0:0:0").toString());
+        assertEquals("10.0.0.1", IpAddress.parse("::ffff:10.0.0.1").toString());
+        assertEquals("::a00:1", IpAddress.parse("::10.0.0.1").toString());
+    }
+
+    @Test
+    public void roundTripsThroughBytes() {
+        for (String text : new String[]{"::", "10.0.0.1", "2001:db8::ff00:42:8329", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"}) {
+            IpAddress address = IpAddress.parse(text);
+            assertEquals(address, IpAddress.fromBytes(address.toBytes()));
+        }
+    }
+}
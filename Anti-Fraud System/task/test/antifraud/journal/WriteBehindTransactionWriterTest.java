@@ -0,0 +1,121 @@
+package antifraud.journal;
+
+import antifraud.AntiFraudSpringTest;
+import antifraud.domain.Region;
+import antifraud.domain.TransactionValidationResult;
+import antifraud.exception.TransactionJournalException;
+import antifraud.index.TransactionWindowIndex;
+import antifraud.model.Transaction;
+import antifraud.repository.TransactionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@AntiFraudSpringTest
+public class WriteBehindTransactionWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TransactionWindowIndex windowIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private WriteBehindTransactionWriter writer;
+    private TransactionTemplate transactionTemplate;
+
+    @Before
+    public void start() throws Exception {
+        writer = new WriteBehindTransactionWriter(transactionRepository, transactionManager, windowIndex, objectMapper,
+                folder.getRoot().getPath(), 1 << 20, 100, 5_000);
+        writer.start();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @After
+    public void stop() throws Exception {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void appliesCommittedTransactions() {
+        transactionTemplate.executeWithoutResult(status -> writer.write(transaction("4000008084934497")));
+        writer.flush();
+
+        assertEquals(1, transactionRepository.findAllByNumberOrderById("4000008084934497").size());
+    }
+
+    @Test
+    public void skipsRolledBackTransactions() {
+        transactionTemplate.executeWithoutResult(status -> {
+            writer.write(transaction("4000002690287125"));
+            status.setRollbackOnly();
+        });
+        writer.write(transaction("4000007348166385"));
+        writer.flush();
+
+        assertTrue(transactionRepository.findAllByNumberOrderById("4000002690287125").isEmpty());
+        assertEquals(1, transactionRepository.findAllByNumberOrderById("4000007348166385").size());
+    }
+
+    @Test
+    public void cancelsEntriesOfAFailedCommit() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                writer.write(transaction("4000001868449640"));
+                // fails the commit after the writer has journaled the entry
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        throw new IllegalStateException("commit failed");
+                    }
+                });
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        writer.flush();
+
+        assertTrue(transactionRepository.findAllByNumberOrderById("4000001868449640").isEmpty());
+    }
+
+    @Test
+    public void refusesWritesOnceClosed() throws Exception {
+        writer.stop();
+        WriteBehindTransactionWriter closed = writer;
+        writer = null;
+
+        assertThrows(TransactionJournalException.class, () -> closed.write(transaction("4000006294736531")));
+    }
+
+    private static Transaction transaction(String number) {
+        Transaction transaction = new Transaction(100L, "10.0.0.1", number, Region.EAP, LocalDateTime.of(2030, 1, 1, 10, 0));
+        transaction.setResult(TransactionValidationResult.ALLOWED);
+        return transaction;
+    }
+}
@@ -0,0 +1,147 @@
+package antifraud.reactive;
+
+import antifraud.AntiFraudApplication;
+import antifraud.domain.TransactionDto;
+import antifraud.domain.UserRole;
+import antifraud.model.User;
+import antifraud.repository.UserRepository;
+import antifraud.rest.TransactionResponse;
+import antifraud.service.IdempotencyService;
+import antifraud.service.TransactionService;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// the reactive server next to the servlet side, on one in-memory database and with the write-behind journal on
+public class ReactiveTransactionServiceImplTest {
+
+    private static final String MERCHANT = "reactive-merchant";
+    private static final String PASSWORD = "reactive";
+    private static final String[] IPS = {"192.168.1.1", "192.168.1.2", "192.168.1.3", "10.0.0.1"};
+    private static final String[] REGIONS = {"EAP", "ECA", "HIC", "LAC"};
+
+    private static Path journal;
+    private static ConfigurableApplicationContext context;
+    private static URI base;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeClass
+    public static void start() throws IOException {
+        journal = Files.createTempDirectory("antifraud-journal");
+        context = new SpringApplicationBuilder(AntiFraudApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:reactive-test;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--antifraud.reactive.enabled=true",
+                "--antifraud.reactive.port=0",
+                "--antifraud.reactive.r2dbc-url=r2dbc:pool:h2:mem:///reactive-test",
+                "--antifraud.write-behind.enabled=true",
+                "--antifraud.write-behind.journal-dir=" + journal,
+                "--antifraud.password-hashing.strength=4");
+        base = URI.create("http://localhost:" + context.getBean(ReactiveTransactionServer.class).port());
+
+        User merchant = new User();
+        merchant.setName("Merchant");
+        merchant.setUsername(MERCHANT);
+        merchant.setPassword(context.getBean(PasswordEncoder.class).encode(PASSWORD));
+        merchant.setRole(UserRole.ROLE_MERCHANT);
+        merchant.setAccountNonLocked(true);
+        context.getBean(UserRepository.class).save(merchant);
+    }
+
+    @AfterClass
+    public static void stop() throws IOException {
+        if (context != null) {
+            context.close();
+        }
+        FileSystemUtils.deleteRecursively(journal);
+    }
+
+    // the shipped url has to name the file spring.datasource.url opens
+    @Test
+    public void defaultUrlOpensTheServletDatabase() throws IOException {
+        Properties properties = PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(properties.getProperty("antifraud.reactive.r2dbc-url"));
+
+        assertEquals("jdbc:h2:file:" + options.getValue(ConnectionFactoryOptions.DATABASE), properties.getProperty("spring.datasource.url"));
+    }
+
+    // the same transactions, one card scored on each side
+    @Test
+    public void decidesLikeTheServletPath() {
+        final String servletNumber = "4000008449433403";
+        final String reactiveNumber = "4000003305160034";
+        Random random = new Random(42);
+        LocalDateTime date = LocalDateTime.of(2030, 1, 1, 10, 0);
+        List<TransactionResponse> servlet = new ArrayList<>();
+        List<TransactionResponse> reactive = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            date = date.plusMinutes(random.nextInt(20));
+            final long amount = 1 + random.nextInt(2000);
+            final String ip = IPS[random.nextInt(IPS.length)];
+            final String region = REGIONS[random.nextInt(REGIONS.length)];
+            servlet.add(context.getBean(TransactionService.class).validate(
+                    new TransactionDto(amount, ip, servletNumber, region, date.toString())));
+            reactive.add(context.getBean(ReactiveTransactionService.class).validate(
+                    new TransactionDto(amount, ip, reactiveNumber, region, date.toString())).block());
+        }
+
+        assertEquals(servlet, reactive);
+    }
+
+    @Test
+    public void historyIncludesTransactionsStillInTheJournal() {
+        final String number = "4000002000000008";
+        context.getBean(TransactionService.class).validate(new TransactionDto(100L, "10.0.0.1", number, "EAP", "2030-01-01T10:00:00"));
+
+        assertEquals(1, context.getBean(ReactiveTransactionService.class).findAllByNumber(number).block().size());
+    }
+
+    @Test
+    public void aRetryWithTheSameKeyIsNotScoredAgain() throws Exception {
+        final String number = "4000003305061034";
+        final String transaction = "{\"amount\":100,\"ip\":\"10.0.0.1\",\"number\":\"" + number + "\",\"region\":\"EAP\",\"date\":\"2030-01-01T10:00:00\"}";
+
+        HttpResponse<String> first = post("retried", transaction);
+        HttpResponse<String> retry = post("retried", transaction);
+
+        assertEquals(200, first.statusCode());
+        assertEquals(first.body(), retry.body());
+        assertEquals(1, context.getBean(ReactiveTransactionService.class).findAllByNumber(number).block().size());
+        assertEquals(422, post("retried", transaction.replace("\"amount\":100", "\"amount\":200")).statusCode());
+    }
+
+    private HttpResponse<String> post(String idempotencyKey, String json) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(base.resolve("/api/antifraud/transaction"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((MERCHANT + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8)))
+                .header(IdempotencyService.IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,83 @@
+package antifraud.service;
+
+import antifraud.AntiFraudApplication;
+import antifraud.domain.Blacklist;
+import antifraud.domain.BlacklistAction;
+import antifraud.index.BlacklistIndex;
+import antifraud.model.BlacklistChange;
+import antifraud.model.StolenCard;
+import antifraud.repository.StolenCardRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+// the scheduled purge runs alongside the explicit one; the wheel hands each entry to only one of them
+public class BlacklistBulkServiceImplTest {
+
+    private static final String EXPIRING = "4000008449433445";
+    private static final String RENEWED = "4000008449433452";
+
+    private ConfigurableApplicationContext context;
+
+    @Before
+    public void startNode() {
+        context = new SpringApplicationBuilder(AntiFraudApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:purge-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=update",
+                "--spring.jmx.enabled=false",
+                "--antifraud.blacklist.expiry-interval-ms=200");
+    }
+
+    @After
+    public void stopNode() {
+        context.close();
+    }
+
+    // the renewal is written straight to the table, as another node would before this one syncs it
+    @Test
+    public void purgeDeletesExpiredRowsButNotRenewedOnes() throws InterruptedException {
+        final LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(1);
+        StolenCardService stolenCardService = context.getBean(StolenCardService.class);
+        stolenCardService.create(card(EXPIRING, expiresAt));
+        stolenCardService.create(card(RENEWED, expiresAt));
+        context.getBean(JdbcTemplate.class).update("UPDATE stolen_card SET expires_at = ? WHERE number = ?",
+                Timestamp.valueOf(expiresAt.plusDays(1)), RENEWED);
+
+        StolenCardRepository repository = context.getBean(StolenCardRepository.class);
+        BlacklistBulkServiceImpl bulkService = context.getBean(BlacklistBulkServiceImpl.class);
+        final long giveUp = System.currentTimeMillis() + 10_000;
+        while (repository.findByNumber(EXPIRING).isPresent()) {
+            assertTrue("expired card was not purged", System.currentTimeMillis() < giveUp);
+            Thread.sleep(100);
+            bulkService.purgeExpired();
+        }
+
+        assertTrue(repository.findByNumber(RENEWED).isPresent());
+        assertFalse(context.getBean(BlacklistIndex.class).isStolen(EXPIRING));
+
+        List<String> removed = context.getBean(BlacklistChangeService.class).findSince(0, 100).stream()
+                .filter(change -> change.getList() == Blacklist.STOLEN_CARD && change.getAction() == BlacklistAction.REMOVE)
+                .map(BlacklistChange::getValue)
+                .collect(Collectors.toList());
+        assertEquals(List.of(EXPIRING), removed);
+    }
+
+    private static StolenCard card(String number, LocalDateTime expiresAt) {
+        StolenCard card = new StolenCard();
+        card.setNumber(number);
+        card.setExpiresAt(expiresAt);
+        return card;
+    }
+}
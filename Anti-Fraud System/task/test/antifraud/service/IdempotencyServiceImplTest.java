@@ -0,0 +1,94 @@
+package antifraud.service;
+
+import antifraud.AntiFraudSpringTest;
+import antifraud.domain.TransactionDto;
+import antifraud.exception.IdempotencyKeyReuseException;
+import antifraud.model.IdempotencyRecord;
+import antifraud.repository.IdempotencyRecordRepository;
+import antifraud.rest.TransactionResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static antifraud.domain.TransactionValidationResult.ALLOWED;
+import static antifraud.domain.TransactionValidationResult.PROHIBITED;
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@AntiFraudSpringTest
+public class IdempotencyServiceImplTest {
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void storingAKeyTwiceFailsInsteadOfOverwriting() {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> repository.save(
+                new IdempotencyRecord("test:first", "first", ALLOWED, "none", LocalDateTime.now())));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> repository.save(
+                    new IdempotencyRecord("test:first", "second", PROHIBITED, "amount", LocalDateTime.now())));
+            fail("the second record of the key was stored");
+        } catch (DataIntegrityViolationException e) {
+            // expected
+        }
+
+        assertEquals("first", repository.findById("test:first").orElseThrow().getFingerprint());
+    }
+
+    @Test
+    public void expiredKeyIsScoredAgain() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> repository.save(
+                new IdempotencyRecord("test:expired", "stale", PROHIBITED, "amount", LocalDateTime.now().minusYears(1))));
+        final AtomicInteger scored = new AtomicInteger();
+
+        TransactionResponse response = idempotencyService.execute("test", "expired",
+                new TransactionDto(100L, "10.3.0.1", "4000008449433403", "EAP", "2030-01-01T10:00:00"),
+                () -> {
+                    scored.incrementAndGet();
+                    return new TransactionResponse(ALLOWED, "none");
+                });
+
+        assertEquals(1, scored.get());
+        assertEquals(ALLOWED, response.getResult());
+        assertEquals(ALLOWED, repository.findById("test:expired").orElseThrow().getResult());
+    }
+
+    @Test
+    public void retryWritingTheAddressDifferentlyIsReplayed() {
+        final AtomicInteger scored = new AtomicInteger();
+        final Supplier<TransactionResponse> scoring = () -> {
+            scored.incrementAndGet();
+            return new TransactionResponse(ALLOWED, "none");
+        };
+
+        idempotencyService.execute("test", "mapped", transaction("10.4.0.1"), scoring);
+        assertEquals(ALLOWED, idempotencyService.execute("test", "mapped", transaction("::ffff:10.4.0.1"), scoring).getResult());
+        idempotencyService.execute("test", "ipv6", transaction("2001:db8::4:1"), scoring);
+        assertEquals(ALLOWED, idempotencyService.execute("test", "ipv6", transaction("2001:DB8:0:0:0:0:4:1"), scoring).getResult());
+
+        assertEquals(2, scored.get());
+        assertThrows(IdempotencyKeyReuseException.class,
+                () -> idempotencyService.execute("test", "ipv6", transaction("2001:db8::4:2"), scoring));
+    }
+
+    private static TransactionDto transaction(String ip) {
+        return new TransactionDto(100L, ip, "4000008449433460", "EAP", "2030-01-01T10:00:00");
+    }
+}
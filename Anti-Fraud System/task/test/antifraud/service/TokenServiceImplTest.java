@@ -0,0 +1,29 @@
+package antifraud.service;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+
+import static org.junit.Assert.*;
+
+public class TokenServiceImplTest {
+
+    private static final long TTL_MILLIS = 900_000;
+
+    @Test
+    public void refusesToStartWithoutASecretWhenMoreNodesAreExpected() {
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> new TokenServiceImpl(null, null, "", 3, TTL_MILLIS));
+        assertTrue(e.getMessage(), e.getMessage().contains("antifraud.token.secret"));
+    }
+
+    @Test
+    public void refusesAShortSecret() {
+        assertThrows(IllegalStateException.class, () -> new TokenServiceImpl(null, null, "secret", 1, TTL_MILLIS));
+    }
+
+    @Test
+    public void startsASingleNodeWithoutASecret() throws GeneralSecurityException {
+        assertNotNull(new TokenServiceImpl(null, null, "", 1, TTL_MILLIS));
+        assertNotNull(new TokenServiceImpl(null, null, "x".repeat(32), 2, TTL_MILLIS));
+    }
+}
@@ -0,0 +1,108 @@
+package antifraud.service;
+
+import antifraud.domain.TransactionCorrelation;
+import antifraud.domain.TransactionValidationResult;
+import org.junit.Test;
+
+import static antifraud.domain.TransactionValidationResult.*;
+import static org.junit.Assert.assertEquals;
+
+public class TransactionDecisionTableTest {
+
+    // up to three is enough to reach none, two and more than two of each correlation
+    private static final long MAX_COUNT = 3;
+
+    @Test
+    public void decidesLikeTheIfElseChains() {
+        for (TransactionValidationResult amountResult : TransactionValidationResult.values()) {
+            for (long regionCount = 0; regionCount <= MAX_COUNT; regionCount++) {
+                for (long ipCount = 0; ipCount <= MAX_COUNT; ipCount++) {
+                    for (int blacklisted = 0; blacklisted < 4; blacklisted++) {
+                        Checks checks = new Checks(amountResult, regionCount, ipCount, (blacklisted & 1) != 0, (blacklisted & 2) != 0);
+                        var decision = TransactionDecisionTable.decide(amountResult, TransactionDecisionTable.signalsOf(
+                                new TransactionCorrelation(regionCount, ipCount), checks.blacklistedIp, checks.blacklistedNumber));
+
+                        assertEquals(checks.toString(), checks.expected(), decision.getResult() + " " + decision.getInfo());
+                    }
+                }
+            }
+        }
+    }
+
+    // the decision as TransactionServiceImpl made it before the table, branch for branch
+    private static final class Checks {
+
+        private final TransactionValidationResult amountResult;
+        private final boolean twoRegions;
+        private final boolean twoIps;
+        private final boolean moreThanTwoRegions;
+        private final boolean moreThanTwoIps;
+        private final boolean blacklistedIp;
+        private final boolean blacklistedNumber;
+
+        private Checks(TransactionValidationResult amountResult, long regionCount, long ipCount, boolean blacklistedIp, boolean blacklistedNumber) {
+            this.amountResult = amountResult;
+            this.twoRegions = regionCount == 2;
+            this.twoIps = ipCount == 2;
+            this.moreThanTwoRegions = regionCount > 2;
+            this.moreThanTwoIps = ipCount > 2;
+            this.blacklistedIp = blacklistedIp;
+            this.blacklistedNumber = blacklistedNumber;
+        }
+
+        String expected() {
+            final boolean cardAndAddress = blacklistedNumber && blacklistedIp;
+            final boolean ipAndRegion = twoIps && twoRegions;
+
+            if (amountResult == PROHIBITED) {
+                if (cardAndAddress && ipAndRegion) {
+                    return "PROHIBITED amount, card-number, ip, ip-correlation, region-correlation";
+                } else if (cardAndAddress && moreThanTwoIps) {
+                    return "PROHIBITED amount, card-number, ip, ip-correlation";
+                } else if (cardAndAddress && moreThanTwoRegions) {
+                    return "PROHIBITED amount, card-number, ip, region-correlation";
+                } else if (cardAndAddress) {
+                    return "PROHIBITED amount, card-number, ip";
+                } else if (blacklistedNumber) {
+                    return "PROHIBITED amount, card-number";
+                } else if (blacklistedIp) {
+                    return "PROHIBITED amount, ip";
+                } else if (moreThanTwoRegions) {
+                    return "PROHIBITED amount, region-correlation";
+                } else if (moreThanTwoIps) {
+                    return "PROHIBITED amount, ip-correlation";
+                }
+                return "PROHIBITED amount";
+            }
+
+            if (cardAndAddress && ipAndRegion) {
+                return "PROHIBITED card-number, ip, ip-correlation, region-correlation";
+            } else if (moreThanTwoIps && moreThanTwoRegions) {
+                return "PROHIBITED ip-correlation, region-correlation";
+            } else if (cardAndAddress) {
+                return "PROHIBITED card-number, ip";
+            } else if (moreThanTwoRegions) {
+                return "PROHIBITED region-correlation";
+            } else if (moreThanTwoIps) {
+                return "PROHIBITED ip-correlation";
+            } else if (blacklistedNumber) {
+                return "PROHIBITED card-number";
+            } else if (blacklistedIp) {
+                return "PROHIBITED ip";
+            } else if (ipAndRegion) {
+                return "MANUAL_PROCESSING ip-correlation, region-correlation";
+            } else if (twoRegions) {
+                return "MANUAL_PROCESSING region-correlation";
+            } else if (twoIps) {
+                return "MANUAL_PROCESSING ip-correlation";
+            }
+            return amountResult == ALLOWED ? "ALLOWED none" : "MANUAL_PROCESSING amount";
+        }
+
+        @Override
+        public String toString() {
+            return amountResult + " twoRegions=" + twoRegions + " twoIps=" + twoIps + " moreThanTwoRegions=" + moreThanTwoRegions
+                    + " moreThanTwoIps=" + moreThanTwoIps + " blacklistedIp=" + blacklistedIp + " blacklistedNumber=" + blacklistedNumber;
+        }
+    }
+}
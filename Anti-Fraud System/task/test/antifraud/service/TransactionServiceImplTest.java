@@ -0,0 +1,111 @@
+package antifraud.service;
+
+import antifraud.AntiFraudSpringTest;
+import antifraud.domain.TransactionDto;
+import antifraud.model.Card;
+import antifraud.model.Transaction;
+import antifraud.repository.CardRepository;
+import antifraud.rest.FeedbackUpdateRequest;
+import antifraud.rest.TransactionResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static antifraud.domain.TransactionValidationResult.*;
+import static antifraud.util.AntiFraudUtil.increaseLimit;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@AntiFraudSpringTest
+public class TransactionServiceImplTest {
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Test
+    public void rolledBackTransactionsAreNotCorrelated() {
+        final String number = "4000003305061034";
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.validate(transaction(number, "10.0.0.1", "2030-01-01T10:00:00"));
+            transactionService.validate(transaction(number, "10.0.0.2", "2030-01-01T10:01:00"));
+            status.setRollbackOnly();
+        });
+
+        TransactionResponse response = transactionService.validate(transaction(number, "10.0.0.3", "2030-01-01T10:02:00"));
+
+        assertEquals(ALLOWED, response.getResult());
+        assertEquals("none", response.getInfo());
+    }
+
+    @Test
+    public void batchCorrelatesWithItsOwnEarlierTransactions() {
+        final String number = "4000004326319830";
+        List<TransactionResponse> responses = transactionService.validateAll(List.of(
+                transaction(number, "10.1.0.1", "2030-01-01T10:00:00"),
+                transaction(number, "10.1.0.2", "2030-01-01T10:01:00"),
+                transaction(number, "10.1.0.3", "2030-01-01T10:02:00")));
+
+        assertEquals(ALLOWED, responses.get(1).getResult());
+        assertEquals(MANUAL_PROCESSING, responses.get(2).getResult());
+        assertEquals("ip-correlation", responses.get(2).getInfo());
+    }
+
+    // every feedback raises both limits of the same card, starting with the one that creates its row
+    @Test
+    public void concurrentFeedbackKeepsEveryLimitChange() throws Exception {
+        final String number = "4000008061224411";
+        final int threads = 64;
+        final long amount = 1_000_000_000L;
+        for (int i = 0; i < threads; i++) {
+            TransactionResponse response = transactionService.validate(
+                    new TransactionDto(amount, "10.2.0.1", number, "EAP", "2030-01-01T10:00:00"));
+            assertEquals(PROHIBITED, response.getResult());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Transaction>> updates = new ArrayList<>();
+        for (Transaction transaction : transactionService.findAllByNumber(number)) {
+            updates.add(pool.submit(() -> {
+                FeedbackUpdateRequest request = new FeedbackUpdateRequest();
+                request.setTransactionId(transaction.getId());
+                request.setFeedback(ALLOWED.name());
+                start.await();
+                return transactionService.updateTransactionFeedback(request);
+            }));
+        }
+        start.countDown();
+        for (Future<Transaction> update : updates) {
+            update.get(1, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        long maxAllowed = Card.MAX_ALLOWED;
+        long maxManual = Card.MAX_MANUAL;
+        for (int i = 0; i < threads; i++) {
+            maxAllowed = increaseLimit(maxAllowed, amount);
+            maxManual = increaseLimit(maxManual, amount);
+        }
+        Card card = cardRepository.findByNumber(number).orElseThrow();
+        assertEquals(threads, updates.size());
+        assertEquals(maxAllowed, (long) card.getMaxAllowed());
+        assertEquals(maxManual, (long) card.getMaxManual());
+    }
+
+    private static TransactionDto transaction(String number, String ip, String date) {
+        return new TransactionDto(100L, ip, number, "EAP", date);
+    }
+}
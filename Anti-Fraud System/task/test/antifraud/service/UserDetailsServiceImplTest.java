@@ -0,0 +1,102 @@
+package antifraud.service;
+
+import antifraud.AntiFraudApplication;
+import antifraud.domain.UserRole;
+import antifraud.model.User;
+import antifraud.repository.UserRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+// without the credential cache every login below goes through BCrypt against the stored hash
+public class UserDetailsServiceImplTest {
+
+    private static final String USERNAME = "legacy-admin";
+    private static final String PASSWORD = "legacy-password";
+    private static final int STRENGTH = 11;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+
+    @Before
+    public void startNode() {
+        context = new SpringApplicationBuilder(AntiFraudApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:rehash-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=update",
+                "--spring.jmx.enabled=false",
+                "--antifraud.auth.cache-max-entries=0",
+                "--antifraud.password-hashing.strength=" + STRENGTH);
+        userRepository = context.getBean(UserRepository.class);
+
+        User user = new User();
+        user.setName("Legacy");
+        user.setUsername(USERNAME);
+        user.setPassword(new BCryptPasswordEncoder(10).encode(PASSWORD));
+        user.setRole(UserRole.ROLE_ADMINISTRATOR);
+        user.setAccountNonLocked(true);
+        userRepository.save(user);
+    }
+
+    @After
+    public void stopNode() {
+        context.close();
+    }
+
+    @Test
+    public void loginRehashesAtTheConfiguredCost() throws Exception {
+        assertEquals(200, signIn(PASSWORD));
+
+        final String rehashed = storedHash();
+        assertTrue(rehashed, rehashed.startsWith("$2a$" + STRENGTH + "$"));
+        assertTrue(new BCryptPasswordEncoder().matches(PASSWORD, rehashed));
+        assertEquals(200, signIn(PASSWORD));
+        assertEquals(rehashed, storedHash());
+        assertEquals(401, signIn("wrong-password"));
+    }
+
+    // a rehash computed from a hash that changed in the meantime leaves the newer password in place
+    @Test
+    public void rehashKeepsAPasswordChangedInTheMeantime() {
+        UserDetailsServiceImpl userDetailsService = context.getBean(UserDetailsServiceImpl.class);
+        UserDetails stale = userDetailsService.loadUserByUsername(USERNAME);
+        final String changed = new BCryptPasswordEncoder(4).encode("changed-password");
+        assertTrue(context.getBean(UserService.class).upgradePassword(USERNAME, stale.getPassword(), changed));
+
+        UserDetails returned = userDetailsService.updatePassword(stale, new BCryptPasswordEncoder(4).encode(PASSWORD));
+
+        assertSame(stale, returned);
+        assertEquals(changed, storedHash());
+    }
+
+    private String storedHash() {
+        return userRepository.findUsersByUsernameIgnoreCase(USERNAME).orElseThrow().getPassword();
+    }
+
+    private int signIn(String password) throws IOException, InterruptedException {
+        final int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        final String credentials = Base64.getEncoder().encodeToString((USERNAME + ':' + password).getBytes(StandardCharsets.UTF_8));
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/list"))
+                        .header("Authorization", "Basic " + credentials)
+                        .GET()
+                        .build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
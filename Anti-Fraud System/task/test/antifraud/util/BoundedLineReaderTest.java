@@ -0,0 +1,57 @@
+package antifraud.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class BoundedLineReaderTest {
+
+    @Test
+    public void splitsOnEveryLineTerminator() throws IOException {
+        BoundedLineReader reader = new BoundedLineReader(new StringReader("a\nb\r\nc\rd"), 10);
+
+        assertEquals("a", reader.readLine());
+        assertEquals("b", reader.readLine());
+        assertEquals("c", reader.readLine());
+        assertEquals("d", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    public void keepsEmptyLines() throws IOException {
+        BoundedLineReader reader = new BoundedLineReader(new StringReader("\n\r\nx\n"), 10);
+
+        assertEquals("", reader.readLine());
+        assertEquals("", reader.readLine());
+        assertEquals("x", reader.readLine());
+        assertNull(reader.readLine());
+    }
+
+    // longer than the read buffer, so the skipped part spans several reads
+    @Test
+    public void truncatesLongLinesAndCarriesOn() throws IOException {
+        String longLine = "y".repeat(20_000);
+        BoundedLineReader reader = new BoundedLineReader(new StringReader("short\n" + longLine + "\nnext"), 16);
+
+        assertEquals("short", reader.readLine());
+        assertFalse(reader.isTruncated());
+
+        assertEquals("y".repeat(16), reader.readLine());
+        assertTrue(reader.isTruncated());
+
+        assertEquals("next", reader.readLine());
+        assertFalse(reader.isTruncated());
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    public void lineOfExactlyMaxLengthIsNotTruncated() throws IOException {
+        BoundedLineReader reader = new BoundedLineReader(new StringReader("abcd\n"), 4);
+
+        assertEquals("abcd", reader.readLine());
+        assertFalse(reader.isTruncated());
+    }
+}